@@ -0,0 +1,22 @@
+#!/bin/sh
+#
+#  Copyright 2023 The original authors
+#
+#  Licensed under the Apache License, Version 2.0 (the "License");
+#  you may not use this file except in compliance with the License.
+#  You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+#  Unless required by applicable law or agreed to in writing, software
+#  distributed under the License is distributed on an "AS IS" BASIS,
+#  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#  See the License for the specific language governing permissions and
+#  limitations under the License.
+#
+
+
+# ./benchmark.sh [--runs 10] [--baseline results/base.tsv] [--output results/new.tsv] [--perf] ./run-25.sh Challenge_26_Vectorization
+. ./env.sh
+
+taskset -c 0-7 $JAVA $JAVA_OPTS $JAVA_CP dev.akorzun.util.BenchmarkRunner "$@"
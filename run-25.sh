@@ -20,6 +20,12 @@
 CLASS_NAME=dev.akorzun.onebrc.Challenge_25_Bonus
 IMAGE_NAME=build/image-25
 
+# PROBES=true ./run-25.sh: -Dprobes is read when the class is initialized at build time, so it needs its own image
+if [ "$PROBES" = "true" ]; then
+    NATIVE_IMAGE_OPTS="$NATIVE_IMAGE_OPTS -Dprobes=true"
+    IMAGE_NAME=$IMAGE_NAME-probes
+fi
+
 if ! [ -f $IMAGE_NAME ]; then
     $NATIVE_IMAGE $NATIVE_IMAGE_OPTS --initialize-at-build-time=$CLASS_NAME $JAVA_CP -o $IMAGE_NAME $CLASS_NAME
 fi
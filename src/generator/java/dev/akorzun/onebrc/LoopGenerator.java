@@ -0,0 +1,115 @@
+package dev.akorzun.onebrc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the interleaved loops of {@link Challenge_40_Calibration}: the same loop as in Challenge_25_Bonus,
+ * but for every width in [min, max] instead of the hand-unrolled 4 chunks.
+ * <p>
+ * Usage: LoopGenerator output-directory min max, see the generateLoops task in build.gradle.
+ */
+public class LoopGenerator {
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args[0]);
+        int min = Integer.parseInt(args[1]);
+        int max = Integer.parseInt(args[2]);
+
+        if (min < 2 || max < min) {
+            throw new IllegalArgumentException("Widths must be in [2, max]: " + min + ".." + max);
+        }
+
+        Path file = directory.resolve("dev/akorzun/onebrc/Loops.java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, generate(min, max), StandardCharsets.UTF_8);
+    }
+
+    static String generate(int min, int max) {
+        StringBuilder code = new StringBuilder();
+        code.append("// Generated by LoopGenerator, do not edit\n");
+        code.append("package dev.akorzun.onebrc;\n\n");
+        code.append("import static dev.akorzun.onebrc.Challenge_40_Calibration.*;\n\n");
+        code.append("final class Loops {\n\n");
+        code.append("    static final int MIN_WIDTH = ").append(min).append(";\n");
+        code.append("    static final int MAX_WIDTH = ").append(max).append(";\n\n");
+        code.append("    private Loops() {\n");
+        code.append("    }\n\n");
+
+        code.append("    static void loop(int width, Aggregates aggregates, long position, long limit) {\n");
+        code.append("        switch (width) {\n");
+        for (int width = min; width <= max; width++) {
+            code.append("            case ").append(width).append(" -> loop").append(width).append("(aggregates, position, limit);\n");
+        }
+        code.append("            default -> throw new IllegalArgumentException(\"Width must be in [")
+                .append(min).append(", ").append(max).append("]: \" + width);\n");
+        code.append("        }\n");
+        code.append("    }\n");
+
+        for (int width = min; width <= max; width++) {
+            code.append('\n');
+            loop(code, width);
+        }
+
+        code.append("}\n");
+        return code.toString();
+    }
+
+    private static void loop(StringBuilder code, int width) {
+        code.append("    static void loop").append(width).append("(Aggregates aggregates, long position, long limit) {\n");
+        code.append("        long chunk = (limit - position) / ").append(width).append(";\n");
+
+        for (int i = 1; i < width; i++) {
+            code.append("        long mid").append(i).append(" = next(position + ").append((i == 1) ? "" : i + " * ").append("chunk);\n");
+        }
+
+        code.append('\n');
+
+        for (int i = 1; i <= width; i++) {
+            String from = (i == 1) ? "position" : "mid" + (i - 1);
+            String to = (i == width) ? "limit" : "mid" + i;
+            code.append("        Chunk chunk").append(i).append(" = new Chunk(").append(from).append(", ").append(to).append(");\n");
+        }
+
+        code.append('\n');
+        code.append("        while (");
+        for (int i = 1; i <= width; i++) {
+            code.append((i == 1) ? "" : " && ").append("chunk").append(i).append(".has()");
+        }
+        code.append(") {\n");
+
+        for (int i = 1; i <= width; i++) {
+            code.append("            long word").append(2 * i - 1).append(" = UNSAFE.getLong(chunk").append(i).append(".position);\n");
+            code.append("            long word").append(2 * i).append(" = UNSAFE.getLong(chunk").append(i).append(".position + 8);\n");
+        }
+
+        code.append('\n');
+
+        for (int i = 1; i <= width; i++) {
+            code.append("            long pointer").append(i).append(" = find(aggregates, chunk").append(i)
+                    .append(", word").append(2 * i - 1).append(", word").append(2 * i).append(");\n");
+        }
+
+        code.append('\n');
+
+        for (int i = 1; i <= width; i++) {
+            code.append("            long value").append(i).append(" = value(chunk").append(i).append(");\n");
+        }
+
+        code.append('\n');
+
+        for (int i = 1; i <= width; i++) {
+            code.append("            Aggregates.update(pointer").append(i).append(", value").append(i).append(");\n");
+        }
+
+        code.append("        }\n\n");
+
+        for (int i = 1; i <= width; i++) {
+            code.append("        tail(aggregates, chunk").append(i).append(");\n");
+        }
+
+        code.append("    }\n");
+    }
+}
@@ -0,0 +1,93 @@
+package dev.akorzun.onebrc;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The steps end to end in one JVM, without the run scripts and hyperfine. The rows are written once per trial
+ * to /dev/shm when it is there, so the steps read from memory. The score is seconds per run,
+ * the throughput is rows / score rows/s, the size of the file is printed at setup.
+ * <p>
+ * main() runs every step like ChallengeTest does, the JMH command line narrows it down:
+ * {@code org.openjdk.jmh.Main ChallengeBenchmark -p challenge=Challenge_25_Bonus -p rows=100000000}.
+ * Run from the project directory.
+ * <p>
+ * The steps rely on the process exit to free memory: the mappings of the global arena and the off-heap tables,
+ * e.g. 8 MB per thread for the table of the bonus step, are never released. So every run leaks, and a fork
+ * makes a fixed number of single shot runs, 8 by default, instead of as many as fit in a time budget.
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+public class ChallengeBenchmark {
+
+    @Param("Challenge_25_Bonus")
+    private String challenge;
+
+    @Param({"413", "10k"})
+    private String stations;
+
+    @Param("10000000")
+    private long rows;
+
+    private Challenge implementation;
+    private Path file;
+
+    @Setup
+    public void setup() throws Exception {
+        implementation = (Challenge) Class.forName("dev.akorzun.onebrc." + challenge).getConstructor().newInstance();
+
+        Path shm = Path.of("/dev/shm");
+        Path directory = Files.isDirectory(shm) ? shm : Path.of(System.getProperty("java.io.tmpdir"));
+        file = Files.createTempFile(directory, "measurements-", ".txt");
+
+        Datasets.write(file, Datasets.stations(stations), rows);
+        System.out.println("File: " + file + ", rows: " + rows + ", bytes: " + Files.size(file));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void solve() throws Exception {
+        implementation.solve(new String[0], file, new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static String[] challenges() throws IOException {
+        try (Stream<Path> stream = Files.list(Path.of("src/main/java/dev/akorzun/onebrc"))) {
+            return stream.map(Path::getFileName)
+                    .map(Objects::toString)
+                    .filter(name -> name.startsWith("Challenge_") && name.endsWith(".java"))
+                    .map(name -> name.substring(0, name.length() - 5))
+                    .sorted()
+                    .toArray(String[]::new);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        Options opt = new OptionsBuilder()
+                .include(ChallengeBenchmark.class.getSimpleName())
+                .param("challenge", challenges())
+                .jvmArgsAppend("--enable-preview", "-Dsun.misc.unsafe.memory.access=allow")
+                .build();
+
+        new Runner(opt).run();
+    }
+}
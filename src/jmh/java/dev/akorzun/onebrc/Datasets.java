@@ -0,0 +1,91 @@
+package dev.akorzun.onebrc;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ * Stations and rows for the benchmarks, built from data/weather_stations.csv, so run from the project directory.
+ * Shapes: 413 and 10k - the first stations of the file, long - the 413 ones padded to 64-100 characters.
+ */
+final class Datasets {
+
+    private Datasets() {
+    }
+
+    static String[] stations(String shape) throws IOException {
+        return switch (shape) {
+            case "413" -> weather(413);
+            case "10k" -> weather(10000);
+            case "long" -> padded(weather(413));
+            default -> throw new IllegalArgumentException("Unknown shape: " + shape);
+        };
+    }
+
+    static String[] weather(int count) throws IOException {
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+
+        for (String line : Files.readAllLines(Path.of("data/weather_stations.csv"), StandardCharsets.UTF_8)) {
+            if (!line.startsWith("#") && names.size() < count) {
+                names.add(line.substring(0, line.indexOf(';')));
+            }
+        }
+
+        return names.toArray(String[]::new);
+    }
+
+    private static String[] padded(String[] names) {
+        Random random = new Random(42);
+        String[] stations = new String[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            StringBuilder station = new StringBuilder(names[i]);
+            int length = random.nextInt(64, 101);
+
+            while (station.length() < length) {
+                station.append((char) random.nextInt('a', 'z' + 1));
+            }
+
+            station.setLength(length);
+
+            // the names are UTF-8, the rules allow up to 100 bytes
+            while (station.toString().getBytes(StandardCharsets.UTF_8).length > 100) {
+                station.setLength(station.length() - 1);
+            }
+
+            stations[i] = station.toString();
+        }
+
+        return stations;
+    }
+
+    // the same stations and temperatures as the generators: uniform, -99.9..99.9
+    static byte[] rows(String[] stations, int rows) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < rows; i++) {
+            text.append(stations[random.nextInt(stations.length)]).append(';').append(random.nextInt(-999, 1000) / 10.0).append('\n');
+        }
+
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // rows() streamed to a file, for the sizes that do not fit in memory
+    static void write(Path file, String[] stations, long rows) throws IOException {
+        Random random = new Random(42);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long i = 0; i < rows; i++) {
+                writer.write(stations[random.nextInt(stations.length)]);
+                writer.write(';');
+                writer.write(Double.toString(random.nextInt(-999, 1000) / 10.0));
+                writer.write('\n');
+            }
+        }
+    }
+}
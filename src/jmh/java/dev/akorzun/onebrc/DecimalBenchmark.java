@@ -0,0 +1,122 @@
+package dev.akorzun.onebrc;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single fraction digit trick against the general fixed-point parser of {@link Challenge_34_Decimal}.
+ * Both parse the same lines of temperatures, the general one also lines with a wider range and 0-2 fraction digits.
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class DecimalBenchmark {
+
+    private static final int LINES = 1024;
+    private static final Unsafe U;
+
+    static {
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            U = (Unsafe) unsafe.get(Unsafe.class);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private long temperatures;
+    private long temperaturesEnd;
+    private long decimals;
+    private long decimalsEnd;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder temperatures = new StringBuilder();
+        StringBuilder decimals = new StringBuilder();
+
+        for (int i = 0; i < LINES; i++) {
+            temperatures.append(random.nextInt(-999, 1000) / 10.0).append('\n');
+            decimals.append(BigDecimal.valueOf(random.nextLong(-999999, 1000000), random.nextInt(0, 3)).toPlainString()).append('\n');
+        }
+
+        this.temperatures = copy(temperatures.toString());
+        this.temperaturesEnd = this.temperatures + temperatures.length();
+        this.decimals = copy(decimals.toString());
+        this.decimalsEnd = this.decimals + decimals.length();
+    }
+
+    @TearDown
+    public void tearDown() {
+        U.freeMemory(temperatures);
+        U.freeMemory(decimals);
+    }
+
+    @Benchmark
+    public long trick() {
+        Challenge_34_Decimal.Chunk chunk = new Challenge_34_Decimal.Chunk(temperatures, temperaturesEnd);
+        long sum = 0;
+
+        while (chunk.has()) {
+            sum += Challenge_34_Decimal.value(chunk);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long decimal() {
+        Challenge_34_Decimal.Chunk chunk = new Challenge_34_Decimal.Chunk(temperatures, temperaturesEnd);
+        long sum = 0;
+
+        while (chunk.has()) {
+            sum += Challenge_34_Decimal.decimal(chunk, 1);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long decimalWide() {
+        Challenge_34_Decimal.Chunk chunk = new Challenge_34_Decimal.Chunk(decimals, decimalsEnd);
+        long sum = 0;
+
+        while (chunk.has()) {
+            sum += Challenge_34_Decimal.decimal(chunk, 2);
+        }
+
+        return sum;
+    }
+
+    private static long copy(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        long address = U.allocateMemory(bytes.length + 16); // parsers read a word past the last line
+        U.setMemory(address, bytes.length + 16, (byte) 0);
+        U.copyMemory(bytes, Unsafe.ARRAY_BYTE_BASE_OFFSET, null, address, bytes.length);
+        return address;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(DecimalBenchmark.class.getSimpleName())
+                // .addProfiler(LinuxPerfAsmProfiler.class)
+                .jvmArgsAppend("--enable-preview", "-Dsun.misc.unsafe.memory.access=allow")
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,128 @@
+package dev.akorzun.onebrc;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hash family of {@link Challenge_42_Hash} on the loop over rows with 413 and 10k stations of
+ * data/weather_stations.csv and with adversarial stations made of the same 8 byte words in a different order.
+ * The table is filled in the setup, so the loop measures lookups. The setup prints the probe distribution.
+ * Run from the project directory.
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@OperationsPerInvocation(HashBenchmark.ROWS)
+public class HashBenchmark {
+
+    static final int ROWS = 1024 * 1024;
+    private static final int BUCKETS = 16;
+    private static final Unsafe U;
+
+    static {
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            U = (Unsafe) unsafe.get(Unsafe.class);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Param({"mix", "wy", "crc"})
+    private String hash;
+
+    @Param({"413", "10k", "adversarial"})
+    private String stations;
+
+    private long rows;
+    private long rowsEnd;
+    private Challenge_42_Hash.Aggregates aggregates;
+
+    @Setup
+    public void setup() throws IOException {
+        System.setProperty("hash", hash); // read once on the class initialization, each trial runs in its own fork
+
+        String[] keys = switch (stations) {
+            case "413" -> Datasets.weather(413);
+            case "10k" -> Datasets.weather(10000);
+            case "adversarial" -> adversarial();
+            default -> throw new IllegalArgumentException(stations);
+        };
+
+        byte[] bytes = Datasets.rows(keys, ROWS);
+        rows = U.allocateMemory(bytes.length + 64); // the loop reads words past the last line
+        rowsEnd = rows + bytes.length;
+        U.setMemory(rows, bytes.length + 64, (byte) 0);
+        U.copyMemory(bytes, Unsafe.ARRAY_BYTE_BASE_OFFSET, null, rows, bytes.length);
+
+        aggregates = new Challenge_42_Hash.Aggregates();
+        Challenge_42_Hash.loop(aggregates, rows, rowsEnd);
+
+        long[] probes = aggregates.probes(BUCKETS);
+        long total = 0;
+        long sum = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            total += probes[i];
+            sum += probes[i] * (i + 1);
+        }
+
+        System.out.printf("%nprobes of %s on %s: mean=%.3f, %d+ probes=%d, histogram=%s%n",
+                hash, stations, (double) sum / total, BUCKETS, probes[BUCKETS - 1], java.util.Arrays.toString(probes));
+    }
+
+    @TearDown
+    public void tearDown() {
+        U.freeMemory(rows);
+    }
+
+    @Benchmark
+    public void loop() {
+        Challenge_42_Hash.loop(aggregates, rows, rowsEnd);
+    }
+
+    // all orders of 3 words out of 22: xor folding gives 6 stations the same hash and more via cancelling digits
+    private static String[] adversarial() {
+        List<String> keys = new ArrayList<>();
+
+        for (int i = 0; i < 22; i++) {
+            for (int j = 0; j < 22; j++) {
+                for (int k = 0; k < 22; k++) {
+                    if (i != j && j != k && i != k) {
+                        keys.add(word(i) + word(j) + word(k));
+                    }
+                }
+            }
+        }
+
+        return keys.toArray(String[]::new);
+    }
+
+    private static String word(int i) {
+        return String.format("Word%04d", i);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(HashBenchmark.class.getSimpleName())
+                // .addProfiler(LinuxPerfAsmProfiler.class)
+                .jvmArgsAppend("--enable-preview", "-Dsun.misc.unsafe.memory.access=allow")
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,161 @@
+package dev.akorzun.onebrc;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each stage of {@link Challenge_25_Bonus} on its own, so a regression shows up in the stage that caused it.
+ * The row stages report the time per row: next, comma, value, find and update.
+ * The table stages report the time per table: merge and build.
+ * The setup parses the rows once to have the positions, table pointers and values the stages start from.
+ * Run from the project directory, see {@link Datasets} for the shapes.
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@OperationsPerInvocation(StageBenchmark.ROWS)
+public class StageBenchmark {
+
+    static final int ROWS = 256 * 1024;
+    private static final Unsafe U;
+
+    static {
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            U = (Unsafe) unsafe.get(Unsafe.class);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Param({"413", "10k", "long"})
+    private String stations;
+
+    private long rows;
+    private long rowsEnd;
+    private final long[] keys = new long[ROWS];         // row starts
+    private final long[] temperatures = new long[ROWS]; // after the commas
+    private final long[] pointers = new long[ROWS];     // table slots
+    private final long[] values = new long[ROWS];
+
+    private Challenge_25_Bonus.Aggregates aggregates;
+    private Challenge_25_Bonus.Aggregates rights;
+    private Challenge_25_Bonus.Chunk chunk;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] bytes = Datasets.rows(Datasets.stations(stations), ROWS);
+        rows = U.allocateMemory(bytes.length + 64); // the stages read words past the last line
+        rowsEnd = rows + bytes.length;
+        U.setMemory(rows, bytes.length + 64, (byte) 0);
+        U.copyMemory(bytes, Unsafe.ARRAY_BYTE_BASE_OFFSET, null, rows, bytes.length);
+
+        aggregates = new Challenge_25_Bonus.Aggregates();
+        chunk = new Challenge_25_Bonus.Chunk(rows, rowsEnd);
+
+        for (int i = 0; i < ROWS; i++) {
+            keys[i] = chunk.position;
+            pointers[i] = Challenge_25_Bonus.find(aggregates, chunk, U.getLong(chunk.position), U.getLong(chunk.position + 8));
+            temperatures[i] = chunk.position;
+            values[i] = Challenge_25_Bonus.value(chunk);
+            Challenge_25_Bonus.Aggregates.update(pointers[i], values[i]);
+        }
+
+        // another thread that has seen the same stations, merge() then combines slots and does not copy them
+        rights = new Challenge_25_Bonus.Aggregates();
+        Challenge_25_Bonus.loop(rights, rows, rowsEnd);
+    }
+
+    @TearDown
+    public void tearDown() {
+        U.freeMemory(rows);
+    }
+
+    @Benchmark
+    public long next() {
+        long lines = 0;
+
+        for (long position = rows; position < rowsEnd; position = Challenge_25_Bonus.next(position)) {
+            lines++;
+        }
+
+        return lines;
+    }
+
+    @Benchmark
+    public long comma() {
+        long commas = 0;
+
+        for (long key : keys) {
+            commas += Challenge_25_Bonus.comma(U.getLong(key)) | Challenge_25_Bonus.comma(U.getLong(key + 8));
+        }
+
+        return commas;
+    }
+
+    @Benchmark
+    public long value() {
+        long sum = 0;
+
+        for (long temperature : temperatures) {
+            chunk.position = temperature;
+            sum += Challenge_25_Bonus.value(chunk);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long find() {
+        long sum = 0;
+
+        for (long key : keys) {
+            chunk.position = key;
+            sum += Challenge_25_Bonus.find(aggregates, chunk, U.getLong(key), U.getLong(key + 8));
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public void update() {
+        for (int i = 0; i < ROWS; i++) {
+            Challenge_25_Bonus.Aggregates.update(pointers[i], values[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1)
+    public void merge() {
+        aggregates.merge(rights);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1)
+    public Map<String, ?> build() {
+        return aggregates.build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(StageBenchmark.class.getSimpleName())
+                // .addProfiler(LinuxPerfAsmProfiler.class)
+                .jvmArgsAppend("--enable-preview", "-Dsun.misc.unsafe.memory.access=allow")
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -10,6 +10,8 @@ import sun.misc.Unsafe;
 
 import java.lang.reflect.Field;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 @Fork(1)
@@ -31,6 +33,7 @@ public class VectorBenchmark {
     private long d = 4;
 
     private long[] arrays = new long[4];
+    private long[] temperatures = new long[1024]; // words as the loop sees them right after ';'
 
     static {
         try {
@@ -65,6 +68,76 @@ public class VectorBenchmark {
 
     @Setup
     public void setup() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < temperatures.length; i++) {
+            byte[] line = ((random.nextInt(-999, 1000) / 10.0) + "\nStation;").getBytes(StandardCharsets.UTF_8);
+            for (int j = 7; j >= 0; j--) {
+                temperatures[i] = (temperatures[i] << 8) | (line[j] & 0xFF);
+            }
+        }
+    }
+
+    @Benchmark
+    public long temperaturesScalar() {
+        long sum = 0;
+
+        for (int i = 0; i < temperatures.length; i += 4) {
+            long word1 = temperatures[i];
+            long word2 = temperatures[i + 1];
+            long word3 = temperatures[i + 2];
+            long word4 = temperatures[i + 3];
+
+            long dot1 = Long.numberOfTrailingZeros(~word1 & DOT_BITS);
+            long dot2 = Long.numberOfTrailingZeros(~word2 & DOT_BITS);
+            long dot3 = Long.numberOfTrailingZeros(~word3 & DOT_BITS);
+            long dot4 = Long.numberOfTrailingZeros(~word4 & DOT_BITS);
+
+            sum += value(word1, dot1) + (dot1 >> 3)
+                    + value(word2, dot2) + (dot2 >> 3)
+                    + value(word3, dot3) + (dot3 >> 3)
+                    + value(word4, dot4) + (dot4 >> 3);
+        }
+
+        return sum;
+    }
+
+    // the four temperatures of a round in one LongVector, kept out of the steps until it beats temperaturesScalar
+    @Benchmark
+    public long temperaturesVector() {
+        long sum = 0;
+
+        for (int i = 0; i < temperatures.length; i += 4) {
+            LongVector words = LongVector.zero(LV256)
+                    .withLane(0, temperatures[i])
+                    .withLane(1, temperatures[i + 1])
+                    .withLane(2, temperatures[i + 2])
+                    .withLane(3, temperatures[i + 3]);
+
+            LongVector dots = words.not().and(DOT_BITS).lanewise(VectorOperators.TRAILING_ZEROS_COUNT);
+            LongVector values = values(words, dots).add(dots.lanewise(VectorOperators.LSHR, 3));
+
+            sum += values.lane(0) + values.lane(1) + values.lane(2) + values.lane(3);
+        }
+
+        return sum;
+    }
+
+    static long value(long word, long dot) {
+        long signed = (~word << 59) >> 63;
+        long mask = ~(signed & 0xFF);
+        long digits = ((word & mask) << (28 - dot)) & 0x0F000F0F00L;
+        long abs = ((digits * MAGIC_MULTIPLIER) >>> 32) & 0x3FF;
+        return (abs ^ signed) - signed;
+    }
+
+    // value() lane-wise, AVX2 has no 64-bit multiply so the compiler emulates it with three 32-bit ones
+    static LongVector values(LongVector words, LongVector dots) {
+        LongVector signed = words.not().lanewise(VectorOperators.LSHL, 59).lanewise(VectorOperators.ASHR, 63);
+        LongVector mask = signed.and(0xFF).not();
+        LongVector digits = words.and(mask).lanewise(VectorOperators.LSHL, dots.neg().add(28)).and(0x0F000F0F00L);
+        LongVector abs = digits.mul(MAGIC_MULTIPLIER).lanewise(VectorOperators.LSHR, 32).and(0x3FF);
+        return abs.lanewise(VectorOperators.XOR, signed).sub(signed);
     }
 
     //@Benchmark
@@ -15,6 +15,7 @@
  */
 package dev.akorzun.onebrc;
 
+import dev.akorzun.util.CollisionRecorder;
 import sun.misc.Unsafe;
 
 import java.io.PrintStream;
@@ -40,6 +41,7 @@ public class Challenge_25_Bonus implements Challenge {
     private static final long LINE = 0x0A0A0A0A0A0A0A0AL;  // /n/n/n/n/n/n/n/
     private static final long DOT_BITS = 0x10101000;
     private static final long MAGIC_MULTIPLIER = (100 * 0x1000000 + 10 * 0x10000 + 1);
+    private static final boolean PROBES = Boolean.getBoolean("probes"); // -Dprobes=true or PROBES=true ./run-25.sh, per thread to stderr
     private static final Unsafe UNSAFE;
 
     static {
@@ -83,6 +85,7 @@ public class Challenge_25_Bonus implements Challenge {
 
         new ProcessBuilder()
                 .command(commands)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
                 .start()
                 .getInputStream()
                 .transferTo(System.out);
@@ -230,6 +233,10 @@ public class Challenge_25_Bonus implements Challenge {
             // inlined find to drop 1 branch, compiler thinks that pointer can be 0 even if this condition is met
             // ~10 ms win
             if (word1 == w1 && word2 == w2) {
+                if (PROBES) {
+                    aggregates.probe(pointer, hash);
+                }
+
                 return pointer;
             }
 
@@ -316,6 +323,11 @@ public class Challenge_25_Bonus implements Challenge {
                 loop(aggregates, position, limit);
             }
 
+            // before the merge folds the tables of other threads into this one
+            if (PROBES) {
+                aggregates.recorder.print(aggregates.size(), Aggregates.ENTRIES);
+            }
+
             while (!result.compareAndSet(null, aggregates)) {
                 Aggregates rights = result.getAndSet(null);
 
@@ -340,6 +352,7 @@ public class Challenge_25_Bonus implements Challenge {
         private static final long MASK = (ENTRIES - 1) << 7;
 
         private final long pointer;
+        private final CollisionRecorder recorder = PROBES ? new CollisionRecorder() : null;
 
         public Aggregates() {
             long address = UNSAFE.allocateMemory(SIZE + 4096);
@@ -369,12 +382,21 @@ public class Challenge_25_Bonus implements Challenge {
             for (long offset = hash; ; offset = next(offset)) {
                 long address = pointer + offset;
                 if (equal(address + 24, reference, word, length)) {
+                    if (PROBES) {
+                        probe(address, hash);
+                    }
+
                     return address;
                 }
 
                 int len = UNSAFE.getInt(address);
                 if (len == 0) {
                     alloc(address, reference, length, hash);
+
+                    if (PROBES) {
+                        probe(address, hash);
+                    }
+
                     return address;
                 }
             }
@@ -460,6 +482,23 @@ public class Challenge_25_Bonus implements Challenge {
             return set;
         }
 
+        long size() {
+            long size = 0;
+
+            for (long offset = 0; offset < SIZE; offset += 128) {
+                if (UNSAFE.getInt(pointer + offset) != 0) {
+                    size++;
+                }
+            }
+
+            return size;
+        }
+
+        void probe(long address, long hash) {
+            long distance = (address - pointer - hash) & (SIZE - 1);
+            recorder.record((distance >>> 7) + 1);
+        }
+
         static void alloc(long address, long position, long length, long hash) {
             UNSAFE.putInt(address, (int) length);
             UNSAFE.putInt(address + 4, (int) hash);
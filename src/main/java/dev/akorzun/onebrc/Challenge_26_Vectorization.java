@@ -15,6 +15,7 @@
  */
 package dev.akorzun.onebrc;
 
+import dev.akorzun.util.CollisionRecorder;
 import jdk.incubator.vector.*;
 import sun.misc.Unsafe;
 
@@ -42,6 +43,7 @@ public class Challenge_26_Vectorization implements Challenge {
     private static final long LINE = 0x0A0A0A0A0A0A0A0AL;  // /n/n/n/n/n/n/n/
     private static final long DOT_BITS = 0x10101000;
     private static final long MAGIC_MULTIPLIER = (100 * 0x1000000 + 10 * 0x10000 + 1);
+    private static final boolean PROBES = Boolean.getBoolean("probes"); // -Dprobes=true or PROBES=true ./run-26.sh, per thread to stderr
     private static final byte SEMICOLON = ';';
     private static final Unsafe UNSAFE;
 
@@ -98,6 +100,7 @@ public class Challenge_26_Vectorization implements Challenge {
 
         new ProcessBuilder()
                 .command(commands)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
                 .start()
                 .getInputStream()
                 .transferTo(System.out);
@@ -214,6 +217,10 @@ public class Challenge_26_Vectorization implements Challenge {
                 entry1 = aggregates.putLong(position1, length1, hash1);
             }
 
+            if (PROBES) {
+                aggregates.probe(entry1, hash1);
+            }
+
             // no vectorization, so keep them close to the branch
             position1 += length1;
             long value1 = UNSAFE.getLong(position1);
@@ -255,6 +262,10 @@ public class Challenge_26_Vectorization implements Challenge {
                 entry2 = aggregates.putLong(position2, length2, hash2);
             }
 
+            if (PROBES) {
+                aggregates.probe(entry2, hash2);
+            }
+
             // no vectorization, so keep them close to the branch
             position2 += length2;
             long value2 = UNSAFE.getLong(position2);
@@ -296,6 +307,10 @@ public class Challenge_26_Vectorization implements Challenge {
                 entry3 = aggregates.putLong(position3, length3, hash3);
             }
 
+            if (PROBES) {
+                aggregates.probe(entry3, hash3);
+            }
+
             // no vectorization, so keep them close to the branch
             position3 += length3;
             long value3 = UNSAFE.getLong(position3);
@@ -337,6 +352,10 @@ public class Challenge_26_Vectorization implements Challenge {
                 entry4 = aggregates.putLong(position4, length4, hash4);
             }
 
+            if (PROBES) {
+                aggregates.probe(entry4, hash4);
+            }
+
             position4 += length4;
             long value4 = UNSAFE.getLong(position4);
             long dot4 = Long.numberOfTrailingZeros(~value4 & DOT_BITS);
@@ -392,6 +411,10 @@ public class Challenge_26_Vectorization implements Challenge {
                 entry = aggregates.putLong(position, length, hash);
             }
 
+            if (PROBES) {
+                aggregates.probe(entry, hash);
+            }
+
             position += length;
             long value = UNSAFE.getLong(position);
             long dot = Long.numberOfTrailingZeros(~value & DOT_BITS);
@@ -453,6 +476,11 @@ public class Challenge_26_Vectorization implements Challenge {
                 loop(aggregates, position, limit);
             }
 
+            // before the merge folds the tables of other threads into this one
+            if (PROBES) {
+                aggregates.recorder.print(aggregates.size(), Aggregates.ENTRIES);
+            }
+
             while (!result.compareAndSet(null, aggregates)) {
                 Aggregates rights = result.getAndSet(null);
 
@@ -477,6 +505,7 @@ public class Challenge_26_Vectorization implements Challenge {
         private static final long MASK = (ENTRIES - 1) << 7;
 
         private final long pointer;
+        private final CollisionRecorder recorder = PROBES ? new CollisionRecorder() : null;
 
         public Aggregates() {
             long address = UNSAFE.allocateMemory(SIZE + 4096);
@@ -614,6 +643,23 @@ public class Challenge_26_Vectorization implements Challenge {
             return set;
         }
 
+        long size() {
+            long size = 0;
+
+            for (long offset = 0; offset < SIZE; offset += 128) {
+                if (UNSAFE.getInt(pointer + offset) != 0) {
+                    size++;
+                }
+            }
+
+            return size;
+        }
+
+        void probe(long address, long hash) {
+            long distance = (address - pointer - hash) & (SIZE - 1);
+            recorder.record((distance >>> 7) + 1);
+        }
+
         static void alloc(long address, long position, long length, long hash) {
             UNSAFE.putInt(address, (int) length);
             UNSAFE.putInt(address + 4, (int) hash);
@@ -0,0 +1,890 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.akorzun.onebrc;
+
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class Challenge_28_QuantileSketch implements Challenge {
+
+    private static final long SEGMENT = 2 * 1024 * 1024;   // 2 MB
+    private static final long COMMA = 0x3B3B3B3B3B3B3B3BL; // ;;;;;;;;
+    private static final long LINE = 0x0A0A0A0A0A0A0A0AL;  // /n/n/n/n/n/n/n/
+    private static final long DOT_BITS = 0x10101000;
+    private static final long MAGIC_MULTIPLIER = (100 * 0x1000000 + 10 * 0x10000 + 1);
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            UNSAFE = (Unsafe) unsafe.get(Unsafe.class);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (isSpawn(args)) {
+            spawn();
+            return;
+        }
+
+        new Challenge_28_QuantileSketch().run(args);
+    }
+
+    static boolean isSpawn(String[] args) {
+        for (String arg : args) {
+            if ("--worker".equals(arg)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static void spawn() throws Exception {
+        ProcessHandle.Info info = ProcessHandle.current().info();
+        ArrayList<String> commands = new ArrayList<>();
+        Optional<String> command = info.command();
+        Optional<String[]> arguments = info.arguments();
+
+        command.ifPresent(commands::add);
+        arguments.ifPresent(strings -> commands.addAll(Arrays.asList(strings)));
+        commands.add("--worker");
+
+        new ProcessBuilder()
+                .command(commands)
+                .start()
+                .getInputStream()
+                .transferTo(System.out);
+    }
+
+    @Override
+    public void solve(String[] args, Path file, PrintStream output) throws Exception {
+        boolean quantiles = false;
+        Path dump = null;
+        List<Path> dumps = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--quantiles":
+                    quantiles = true;
+                    break;
+                case "--quantiles-output":
+                    quantiles = true;
+                    dump = Path.of(args[i + 1]);
+                    break;
+                case "--quantiles-input":
+                    quantiles = true;
+                    dumps.add(Path.of(args[i + 1]));
+                    break;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.global());
+            long start = segment.address();
+            long end = segment.address() + segment.byteSize();
+
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            Aggregator[] aggregators = new Aggregator[parallelism];
+
+            AtomicReference<Aggregates> result = new AtomicReference<>();
+            AtomicLong cursor = new AtomicLong(start);
+
+            for (int i = 0; i < parallelism; i++) {
+                aggregators[i] = new Aggregator(result, cursor, start, end, quantiles);
+                aggregators[i].start();
+            }
+
+            for (Aggregator aggregator : aggregators) {
+                aggregator.join();
+            }
+
+            Aggregates aggregates = result.get();
+
+            // sketches from other processes, merged the same way as the ones from other threads
+            for (Path path : dumps) {
+                aggregates.merge(Aggregates.read(path));
+            }
+
+            if (dump != null) {
+                aggregates.write(dump);
+            }
+
+            output.println(aggregates.build());
+            output.close();
+        }
+    }
+
+    static long next(long position) {
+        while (true) {
+            long word = UNSAFE.getLong(position);
+            long match = word ^ LINE;
+            long line = (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+
+            if (line == 0) {
+                position += 8;
+                continue;
+            }
+
+            return position + (Long.numberOfTrailingZeros(line) >>> 3) + 1;
+        }
+    }
+
+    static void loop(Aggregates aggregates, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit); // ~20ms win
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+            long word3 = UNSAFE.getLong(chunk2.position);
+            long word4 = UNSAFE.getLong(chunk2.position + 8);
+            long word5 = UNSAFE.getLong(chunk3.position);
+            long word6 = UNSAFE.getLong(chunk3.position + 8);
+            long word7 = UNSAFE.getLong(chunk4.position);
+            long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer1 = find(aggregates, chunk1, word1, word2);
+            long pointer2 = find(aggregates, chunk2, word3, word4);
+            long pointer3 = find(aggregates, chunk3, word5, word6);
+            long pointer4 = find(aggregates, chunk4, word7, word8);
+
+            long value1 = value(chunk1);
+            long value2 = value(chunk2);
+            long value3 = value(chunk3);
+            long value4 = value(chunk4);
+
+            Aggregates.update(pointer1, value1);
+            Aggregates.update(pointer2, value2);
+            Aggregates.update(pointer3, value3);
+            Aggregates.update(pointer4, value4);
+        }
+
+        while (chunk1.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+
+            long pointer = find(aggregates, chunk1, word1, word2);
+            long value = value(chunk1);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk2.has()) {
+            long word1 = UNSAFE.getLong(chunk2.position);
+            long word2 = UNSAFE.getLong(chunk2.position + 8);
+
+            long pointer = find(aggregates, chunk2, word1, word2);
+            long value = value(chunk2);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk3.has()) {
+            long word1 = UNSAFE.getLong(chunk3.position);
+            long word2 = UNSAFE.getLong(chunk3.position + 8);
+
+            long pointer = find(aggregates, chunk3, word1, word2);
+            long value = value(chunk3);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk4.position);
+            long word2 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer = find(aggregates, chunk4, word1, word2);
+            long value = value(chunk4);
+
+            Aggregates.update(pointer, value);
+        }
+    }
+
+    static void loop(Aggregates aggregates, Sketches sketches, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit);
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+            long word3 = UNSAFE.getLong(chunk2.position);
+            long word4 = UNSAFE.getLong(chunk2.position + 8);
+            long word5 = UNSAFE.getLong(chunk3.position);
+            long word6 = UNSAFE.getLong(chunk3.position + 8);
+            long word7 = UNSAFE.getLong(chunk4.position);
+            long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer1 = find(aggregates, chunk1, word1, word2);
+            long pointer2 = find(aggregates, chunk2, word3, word4);
+            long pointer3 = find(aggregates, chunk3, word5, word6);
+            long pointer4 = find(aggregates, chunk4, word7, word8);
+
+            long value1 = value(chunk1);
+            long value2 = value(chunk2);
+            long value3 = value(chunk3);
+            long value4 = value(chunk4);
+
+            Aggregates.update(pointer1, value1);
+            Aggregates.update(pointer2, value2);
+            Aggregates.update(pointer3, value3);
+            Aggregates.update(pointer4, value4);
+
+            sketches.add(pointer1 - aggregates.pointer, value1);
+            sketches.add(pointer2 - aggregates.pointer, value2);
+            sketches.add(pointer3 - aggregates.pointer, value3);
+            sketches.add(pointer4 - aggregates.pointer, value4);
+        }
+
+        loop(aggregates, sketches, chunk1);
+        loop(aggregates, sketches, chunk2);
+        loop(aggregates, sketches, chunk3);
+        loop(aggregates, sketches, chunk4);
+    }
+
+    static void loop(Aggregates aggregates, Sketches sketches, Chunk chunk) {
+        while (chunk.has()) {
+            long word1 = UNSAFE.getLong(chunk.position);
+            long word2 = UNSAFE.getLong(chunk.position + 8);
+
+            long pointer = find(aggregates, chunk, word1, word2);
+            long value = value(chunk);
+
+            Aggregates.update(pointer, value);
+            sketches.add(pointer - aggregates.pointer, value);
+        }
+    }
+
+    static long find(Aggregates aggregates, Chunk chunk, long word1, long word2) {
+        long position = chunk.position;
+        long hash;
+
+        long comma1 = comma(word1);
+        long comma2 = comma(word2);
+
+        if ((comma1 | comma2) != 0) {
+            long mask2 = (comma1 == 0) ? -1 : 0;  // cmov
+            word1 = mask(word1, comma1);
+            word2 = mask(word2 & mask2, comma2);
+
+            hash = Aggregates.hash(word1 ^ word2);
+            chunk.position += length(comma1) + (length(comma2) & mask2) + 1;
+
+            long pointer = aggregates.pointer + hash;
+            long w1 = UNSAFE.getLong(pointer + 24);
+            long w2 = UNSAFE.getLong(pointer + 32);
+
+            // inlined find to drop 1 branch, compiler thinks that pointer can be 0 even if this condition is met
+            // ~10 ms win
+            if (word1 == w1 && word2 == w2) {
+                return pointer;
+            }
+
+            word1 = (comma1 == 0) ? word2 : word1;
+        } else {
+            chunk.position += 16;
+            hash = word1 ^ word2;
+
+            while (true) {
+                word1 = UNSAFE.getLong(chunk.position);
+                comma1 = comma(word1);
+
+                if (comma1 == 0) {
+                    chunk.position += 8;
+                    hash ^= word1;
+                    continue;
+                }
+
+                word1 = mask(word1, comma1);
+                hash = Aggregates.hash(hash ^ word1);
+                chunk.position += length(comma1) + 1;
+                break;
+            }
+        }
+
+        long length = chunk.position - position;
+        return aggregates.put(position, word1, length, hash);
+    }
+
+    static long comma(long word) {
+        long match = word ^ COMMA;
+        return (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+    }
+
+    static long mask(long word, long separator) {
+        long mask = separator ^ (separator - 1);
+        return word & mask;
+    }
+
+    static int length(long separator) {
+        return (Long.numberOfTrailingZeros(separator) >>> 3);
+    }
+
+    static int dot(long num) {
+        return Long.numberOfTrailingZeros(~num & DOT_BITS);
+    }
+
+    static long value(Chunk chunk) {
+        long num = UNSAFE.getLong(chunk.position);
+        long dot = dot(num);
+        long signed = (~num << 59) >> 63;
+        long mask = ~(signed & 0xFF);
+        long digits = ((num & mask) << (28 - dot)) & 0x0F000F0F00L;
+        long abs = ((digits * MAGIC_MULTIPLIER) >>> 32) & 0x3FF;
+        long value = (abs ^ signed) - signed;
+        chunk.position += (dot >> 3) + 3;
+        return value;
+    }
+
+    static class Aggregator extends Thread {
+        final AtomicReference<Aggregates> result;
+        final AtomicLong cursor;
+        final long start;
+        final long end;
+        final boolean quantiles;
+
+        public Aggregator(AtomicReference<Aggregates> result, AtomicLong cursor, long start, long end, boolean quantiles) {
+            this.result = result;
+            this.cursor = cursor;
+            this.start = start;
+            this.end = end;
+            this.quantiles = quantiles;
+        }
+
+        @Override
+        public void run() {
+            Sketches sketches = quantiles ? new Sketches() : null;
+            Aggregates aggregates = new Aggregates(sketches);
+
+            for (long position; (position = cursor.getAndAdd(SEGMENT)) < end; ) {
+                long limit = position + Math.min(end - position, SEGMENT + 1);
+
+                if (position > start) {
+                    position = next(position);
+                }
+
+                if (sketches == null) {
+                    loop(aggregates, position, limit);
+                } else {
+                    loop(aggregates, sketches, position, limit);
+                }
+            }
+
+            while (!result.compareAndSet(null, aggregates)) {
+                Aggregates rights = result.getAndSet(null);
+
+                if (rights != null) {
+                    aggregates.merge(rights);
+                }
+            }
+        }
+    }
+
+    private record Aggregate(int min, int max, long sum, int cnt, long[] quantiles) {
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(min / 10.0).append('/').append(Challenge.round(sum / 10.0 / cnt)).append('/').append(max / 10.0);
+
+            if (quantiles != null) {
+                for (long quantile : quantiles) {
+                    builder.append('/').append(quantile / 10.0);
+                }
+            }
+
+            return builder.toString();
+        }
+    }
+
+    static class Aggregates {
+
+        private static final long ENTRIES = 64 * 1024;
+        private static final long SIZE = 128 * ENTRIES;
+        private static final long MASK = (ENTRIES - 1) << 7;
+
+        private final long pointer;
+        private final Sketches sketches;
+
+        public Aggregates(Sketches sketches) {
+            this.sketches = sketches;
+
+            long address = UNSAFE.allocateMemory(SIZE + 4096);
+            pointer = (address + 4095) & (~4095);
+
+            // from jvm sources: https://github.com/openjdk/jdk/blob/master/src/hotspot/share/utilities/copy.cpp#L213
+            // it tries to set memory atomically with long if the address is aligned by 8
+            // workaround to call memset
+            UNSAFE.putByte(pointer, (byte) 0);
+            UNSAFE.setMemory(pointer + 1, SIZE - 1, (byte) 0); // ~2 ms win
+        }
+
+        static long hash(long x) {
+            long h = x * -7046029254386353131L;
+            h ^= h >>> 35;
+            return h & MASK;
+        }
+
+        long find(long word1, long word2, long hash) {
+            long address = pointer + hash;
+            long w1 = UNSAFE.getLong(address + 24);
+            long w2 = UNSAFE.getLong(address + 32);
+            return (word1 == w1) && (word2 == w2) ? address : 0;
+        }
+
+        long put(long reference, long word, long length, long hash) {
+            for (long offset = hash; ; offset = next(offset)) {
+                long address = pointer + offset;
+                if (equal(address + 24, reference, word, length)) {
+                    return address;
+                }
+
+                int len = UNSAFE.getInt(address);
+                if (len == 0) {
+                    alloc(address, reference, length, hash);
+                    return address;
+                }
+            }
+        }
+
+        static void update(long address, long value) {
+            long sum = UNSAFE.getLong(address + 8) + value;
+            int cnt = UNSAFE.getInt(address + 16) + 1;
+            short min = UNSAFE.getShort(address + 20);
+            short max = UNSAFE.getShort(address + 22);
+
+            UNSAFE.putLong(address + 8, sum);
+            UNSAFE.putInt(address + 16, cnt);
+
+            if (value < min) {
+                UNSAFE.putShort(address + 20, (short) value);
+            }
+
+            if (value > max) {
+                UNSAFE.putShort(address + 22, (short) value);
+            }
+        }
+
+        void merge(Aggregates rights) {
+            for (long rightOffset = 0; rightOffset < SIZE; rightOffset += 128) {
+                long rightAddress = rights.pointer + rightOffset;
+                int length = UNSAFE.getInt(rightAddress);
+
+                if (length == 0) {
+                    continue;
+                }
+
+                int hash = UNSAFE.getInt(rightAddress + 4);
+
+                for (long offset = hash; ; offset = next(offset)) {
+                    long address = pointer + offset;
+
+                    if (equal(address + 24, rightAddress + 24, length)) {
+                        long sum = UNSAFE.getLong(address + 8) + UNSAFE.getLong(rightAddress + 8);
+                        int cnt = UNSAFE.getInt(address + 16) + UNSAFE.getInt(rightAddress + 16);
+                        short min = (short) Math.min(UNSAFE.getShort(address + 20), UNSAFE.getShort(rightAddress + 20));
+                        short max = (short) Math.max(UNSAFE.getShort(address + 22), UNSAFE.getShort(rightAddress + 22));
+
+                        UNSAFE.putLong(address + 8, sum);
+                        UNSAFE.putInt(address + 16, cnt);
+                        UNSAFE.putShort(address + 20, min);
+                        UNSAFE.putShort(address + 22, max);
+
+                        if (sketches != null) {
+                            sketches.merge(offset, rights.sketches, rightOffset);
+                        }
+                        break;
+                    }
+
+                    int len = UNSAFE.getInt(address);
+
+                    if (len == 0) {
+                        UNSAFE.copyMemory(rightAddress, address, length + 24);
+
+                        if (sketches != null) {
+                            sketches.merge(offset, rights.sketches, rightOffset);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        Map<String, Aggregate> build() {
+            TreeMap<String, Aggregate> set = new TreeMap<>();
+
+            for (long offset = 0; offset < SIZE; offset += 128) {
+                long address = pointer + offset;
+                int length = UNSAFE.getInt(address);
+
+                if (length != 0) {
+                    byte[] array = new byte[length - 1];
+                    UNSAFE.copyMemory(null, address + 24, array, Unsafe.ARRAY_BYTE_BASE_OFFSET, array.length);
+                    String key = new String(array);
+
+                    long sum = UNSAFE.getLong(address + 8);
+                    int cnt = UNSAFE.getInt(address + 16);
+                    short min = UNSAFE.getShort(address + 20);
+                    short max = UNSAFE.getShort(address + 22);
+
+                    long[] quantiles = (sketches == null) ? null : sketches.quantiles(offset, cnt);
+                    Aggregate aggregate = new Aggregate(min, max, sum, cnt, quantiles);
+                    set.put(key, aggregate);
+                }
+            }
+
+            return set;
+        }
+
+        /**
+         * Dumps occupied slots with their sketches: [offset][slot][sketch]. The layout is position independent,
+         * so another process can load it with {@link #read(Path)} and combine it with {@link #merge(Aggregates)}.
+         */
+        void write(Path file) throws IOException {
+            byte[] buffer = new byte[(int) (8 + 128 + Sketches.ROW)];
+
+            try (OutputStream stream = Files.newOutputStream(file)) {
+                for (long offset = 0; offset < SIZE; offset += 128) {
+                    long address = pointer + offset;
+
+                    if (UNSAFE.getInt(address) != 0) {
+                        UNSAFE.putLong(buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET, offset);
+                        UNSAFE.copyMemory(null, address, buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET + 8, 128);
+                        sketches.copy(offset, buffer, 8 + 128);
+                        stream.write(buffer);
+                    }
+                }
+            }
+        }
+
+        static Aggregates read(Path file) throws IOException {
+            Aggregates aggregates = new Aggregates(new Sketches());
+            byte[] bytes = Files.readAllBytes(file);
+
+            for (int position = 0; position < bytes.length; position += (int) (8 + 128 + Sketches.ROW)) {
+                long offset = UNSAFE.getLong(bytes, Unsafe.ARRAY_BYTE_BASE_OFFSET + position);
+                UNSAFE.copyMemory(bytes, Unsafe.ARRAY_BYTE_BASE_OFFSET + position + 8, null, aggregates.pointer + offset, 128);
+                aggregates.sketches.paste(offset, bytes, position + 8 + 128);
+            }
+
+            return aggregates;
+        }
+
+        static void alloc(long address, long position, long length, long hash) {
+            UNSAFE.putInt(address, (int) length);
+            UNSAFE.putInt(address + 4, (int) hash);
+            UNSAFE.putShort(address + 20, Short.MAX_VALUE);
+            UNSAFE.putShort(address + 22, Short.MIN_VALUE);
+            UNSAFE.copyMemory(position, address + 24, length);
+        }
+
+        static long next(long prev) {
+            return (prev + 128) & (SIZE - 1);
+        }
+
+        static boolean equal(long address, long position, long word, long length) {
+            while (length > 8) {
+                long left = UNSAFE.getLong(position);
+                long right = UNSAFE.getLong(address);
+
+                if (left != right) {
+                    return false;
+                }
+
+                position += 8;
+                address += 8;
+                length -= 8;
+            }
+
+            return word == UNSAFE.getLong(address);
+        }
+
+        static boolean equal(long leftAddress, long rightAddress, long length) {
+            do {
+                long left = UNSAFE.getLong(leftAddress);
+                long right = UNSAFE.getLong(rightAddress);
+
+                if (left != right) {
+                    return false;
+                }
+
+                leftAddress += 8;
+                rightAddress += 8;
+                length -= 8;
+            } while (length > 0);
+
+            return true;
+        }
+    }
+
+    /**
+     * Per-slot quantile sketches in the spirit of DDSketch: values are mapped to log-linear buckets,
+     * 16 sub-buckets per power of two, so any long is covered with ~3% relative error and values below 32 are exact.
+     * Each sketch keeps a fixed window of bins and collapses the lowest bins once the range does not fit.
+     * Rows are allocated on the first hit of a slot and updated in place, so the parse loop does not allocate.
+     */
+    static class Sketches {
+
+        private static final int[] QUANTILES = {50, 95, 99};
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int BINS = 1024;
+        private static final long ROW = 16 + 4 * BINS; // [offset][lo][hi][pad][bins]
+        private static final long ROWS = 1024;
+
+        private final long slots; // slot -> row + 1, 0 if the slot has no row yet
+        private long counters;
+        private long capacity;
+        private long size;
+
+        public Sketches() {
+            slots = UNSAFE.allocateMemory(4 * Aggregates.ENTRIES);
+            counters = UNSAFE.allocateMemory(ROW * ROWS);
+            capacity = ROWS;
+
+            UNSAFE.setMemory(slots, 4 * Aggregates.ENTRIES, (byte) 0);
+            UNSAFE.setMemory(counters, ROW * ROWS, (byte) 0);
+        }
+
+        // 1 value per bucket below 2 * SUB, [16, 32) is the first power of two with SUB buckets of width 1
+        static int index(long value) {
+            long abs = Math.abs(value);
+            int index = (int) abs;
+
+            if (abs >= SUB) {
+                int exponent = 63 - Long.numberOfLeadingZeros(abs);
+                int sub = (int) (abs >>> (exponent - SUB_BITS)) & (SUB - 1);
+                index = ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+            }
+
+            return (value < 0) ? -index : index;
+        }
+
+        static long value(int index) {
+            long abs = Math.abs(index);
+            long value = abs;
+
+            if (abs >= 2 * SUB) {
+                int shift = (int) (abs >>> SUB_BITS) - 1;
+                long lower = (SUB + (abs & (SUB - 1))) << shift;
+                value = lower + ((1L << shift) >>> 1); // middle of the bucket
+            }
+
+            return (index < 0) ? -value : value;
+        }
+
+        void add(long offset, long value) {
+            long row = UNSAFE.getInt(slots + (offset >>> 5)) - 1;
+            int index = index(value);
+
+            if (row < 0) {
+                row = alloc(offset, index);
+            }
+
+            long address = counters + row * ROW;
+            int bin = index - UNSAFE.getInt(address);
+
+            if (bin < 0 || bin >= BINS) {
+                bin = fit(address, index);
+            } else {
+                // lo and hi are the range of the seen values, fit() keeps it in the window when the window moves
+                if (index < UNSAFE.getInt(address + 4)) {
+                    UNSAFE.putInt(address + 4, index);
+                }
+
+                if (index > UNSAFE.getInt(address + 8)) {
+                    UNSAFE.putInt(address + 8, index);
+                }
+            }
+
+            address += 16 + 4L * bin;
+            UNSAFE.putInt(address, UNSAFE.getInt(address) + 1);
+        }
+
+        void merge(long offset, Sketches rights, long rightOffset) {
+            long rightAddress = rights.counters + (UNSAFE.getInt(rights.slots + (rightOffset >>> 5)) - 1) * ROW;
+            int rightFirst = UNSAFE.getInt(rightAddress);
+            int rightLo = UNSAFE.getInt(rightAddress + 4);
+            int rightHi = UNSAFE.getInt(rightAddress + 8);
+
+            long row = UNSAFE.getInt(slots + (offset >>> 5)) - 1;
+
+            if (row < 0) {
+                row = alloc(offset, rightHi);
+            }
+
+            long address = counters + row * ROW;
+            fit(address, rightLo);
+            fit(address, rightHi);
+
+            int first = UNSAFE.getInt(address);
+
+            for (int i = 0; i < BINS; i++) {
+                int count = UNSAFE.getInt(rightAddress + 16 + 4L * i);
+
+                if (count != 0) {
+                    int bin = Math.min(Math.max(rightFirst + i - first, 0), BINS - 1);
+                    long binAddress = address + 16 + 4L * bin;
+                    UNSAFE.putInt(binAddress, UNSAFE.getInt(binAddress) + count);
+                }
+            }
+        }
+
+        long[] quantiles(long offset, long cnt) {
+            long address = counters + (UNSAFE.getInt(slots + (offset >>> 5)) - 1) * ROW;
+            int first = UNSAFE.getInt(address);
+            long[] quantiles = new long[QUANTILES.length];
+            long total = 0;
+
+            // nearest-rank over bins, each bin reports the middle of its bucket
+            int i = 0;
+            for (int bin = 0; bin < BINS && i < quantiles.length; bin++) {
+                total += UNSAFE.getInt(address + 16 + 4L * bin);
+
+                while (i < quantiles.length && total * 100 >= QUANTILES[i] * cnt) {
+                    quantiles[i++] = value(first + bin);
+                }
+            }
+
+            // the bins add up to cnt, so the top bin is only a guard against reading past the row
+            while (i < quantiles.length) {
+                quantiles[i++] = value(first + BINS - 1);
+            }
+
+            return quantiles;
+        }
+
+        void copy(long offset, byte[] buffer, int position) {
+            long address = counters + (UNSAFE.getInt(slots + (offset >>> 5)) - 1) * ROW;
+            UNSAFE.copyMemory(null, address, buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET + position, ROW);
+        }
+
+        void paste(long offset, byte[] buffer, int position) {
+            long row = alloc(offset, 0);
+            long address = counters + row * ROW;
+            UNSAFE.copyMemory(buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET + position, null, address, ROW);
+        }
+
+        // moves the window of bins to cover the index, collapses the lowest bins if the range is too wide
+        private static int fit(long address, int index) {
+            int first = UNSAFE.getInt(address);
+            int lo = Math.min(UNSAFE.getInt(address + 4), index);
+            int hi = Math.max(UNSAFE.getInt(address + 8), index);
+            int target = (hi - lo < BINS) ? Math.min(first, lo) : hi - BINS + 1;
+
+            if (target + BINS <= hi) {
+                target = hi - BINS + 1;
+            }
+
+            if (target != first) {
+                shift(address + 16, first - target);
+                UNSAFE.putInt(address, target);
+            }
+
+            UNSAFE.putInt(address + 4, lo);
+            UNSAFE.putInt(address + 8, hi);
+            return Math.max(index - target, 0);
+        }
+
+        // shift > 0 moves bins up (window goes down), shift < 0 moves bins down collapsing them into bin 0
+        private static void shift(long bins, int shift) {
+            if (shift > 0) {
+                for (int i = BINS - 1; i >= 0; i--) {
+                    int count = (i - shift >= 0) ? UNSAFE.getInt(bins + 4L * (i - shift)) : 0;
+                    UNSAFE.putInt(bins + 4L * i, count);
+                }
+            } else {
+                int collapsed = 0;
+
+                for (int i = 0; i < Math.min(-shift + 1, BINS); i++) {
+                    collapsed += UNSAFE.getInt(bins + 4L * i);
+                }
+
+                for (int i = 1; i < BINS; i++) {
+                    int count = (i - shift < BINS) ? UNSAFE.getInt(bins + 4L * (i - shift)) : 0;
+                    UNSAFE.putInt(bins + 4L * i, count);
+                }
+
+                UNSAFE.putInt(bins, collapsed);
+            }
+        }
+
+        private long alloc(long offset, int index) {
+            if (size == capacity) {
+                counters = UNSAFE.reallocateMemory(counters, 2 * capacity * ROW);
+                UNSAFE.setMemory(counters + capacity * ROW, capacity * ROW, (byte) 0);
+                capacity *= 2;
+            }
+
+            long row = size++;
+            long address = counters + row * ROW;
+            UNSAFE.putInt(address, index - BINS / 2);
+            UNSAFE.putInt(address + 4, index);
+            UNSAFE.putInt(address + 8, index);
+            UNSAFE.putInt(slots + (offset >>> 5), (int) (row + 1));
+            return row;
+        }
+    }
+
+    static class Chunk {
+        final long limit;
+        long position;
+
+        public Chunk(long position, long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean has() {
+            return position < limit;
+        }
+    }
+}
\ No newline at end of file
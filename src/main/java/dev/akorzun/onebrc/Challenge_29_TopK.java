@@ -0,0 +1,898 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.akorzun.onebrc;
+
+import sun.misc.Unsafe;
+
+import java.io.PrintStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class Challenge_29_TopK implements Challenge {
+
+    private static final long SEGMENT = 2 * 1024 * 1024;   // 2 MB
+    private static final long COMMA = 0x3B3B3B3B3B3B3B3BL; // ;;;;;;;;
+    private static final long LINE = 0x0A0A0A0A0A0A0A0AL;  // /n/n/n/n/n/n/n/
+    private static final long DOT_BITS = 0x10101000;
+    private static final long MAGIC_MULTIPLIER = (100 * 0x1000000 + 10 * 0x10000 + 1);
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            UNSAFE = (Unsafe) unsafe.get(Unsafe.class);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (isSpawn(args)) {
+            spawn();
+            return;
+        }
+
+        new Challenge_29_TopK().run(args);
+    }
+
+    static boolean isSpawn(String[] args) {
+        for (String arg : args) {
+            if ("--worker".equals(arg)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static void spawn() throws Exception {
+        ProcessHandle.Info info = ProcessHandle.current().info();
+        ArrayList<String> commands = new ArrayList<>();
+        Optional<String> command = info.command();
+        Optional<String[]> arguments = info.arguments();
+
+        command.ifPresent(commands::add);
+        arguments.ifPresent(strings -> commands.addAll(Arrays.asList(strings)));
+        commands.add("--worker");
+
+        new ProcessBuilder()
+                .command(commands)
+                .start()
+                .getInputStream()
+                .transferTo(System.out);
+    }
+
+    @Override
+    public void solve(String[] args, Path file, PrintStream output) throws Exception {
+        int top = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            if ("--top-k".equals(args[i])) {
+                top = Integer.parseInt(args[i + 1]);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.global());
+            long start = segment.address();
+            long end = segment.address() + segment.byteSize();
+
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            Thread[] threads = new Thread[parallelism];
+
+            AtomicReference<Aggregates> result = new AtomicReference<>();
+            AtomicReference<Summary> summary = new AtomicReference<>();
+            AtomicLong cursor = new AtomicLong(start);
+
+            for (int i = 0; i < parallelism; i++) {
+                threads[i] = (top > 0)
+                        ? new Summarizer(summary, cursor, start, end, 4 * top)
+                        : new Aggregator(result, cursor, start, end);
+                threads[i].start();
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            output.println((top > 0) ? summary.get().build(top) : result.get().build());
+            output.close();
+        }
+    }
+
+    static long next(long position) {
+        while (true) {
+            long word = UNSAFE.getLong(position);
+            long match = word ^ LINE;
+            long line = (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+
+            if (line == 0) {
+                position += 8;
+                continue;
+            }
+
+            return position + (Long.numberOfTrailingZeros(line) >>> 3) + 1;
+        }
+    }
+
+    static void loop(Aggregates aggregates, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit); // ~20ms win
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+            long word3 = UNSAFE.getLong(chunk2.position);
+            long word4 = UNSAFE.getLong(chunk2.position + 8);
+            long word5 = UNSAFE.getLong(chunk3.position);
+            long word6 = UNSAFE.getLong(chunk3.position + 8);
+            long word7 = UNSAFE.getLong(chunk4.position);
+            long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer1 = find(aggregates, chunk1, word1, word2);
+            long pointer2 = find(aggregates, chunk2, word3, word4);
+            long pointer3 = find(aggregates, chunk3, word5, word6);
+            long pointer4 = find(aggregates, chunk4, word7, word8);
+
+            long value1 = value(chunk1);
+            long value2 = value(chunk2);
+            long value3 = value(chunk3);
+            long value4 = value(chunk4);
+
+            Aggregates.update(pointer1, value1);
+            Aggregates.update(pointer2, value2);
+            Aggregates.update(pointer3, value3);
+            Aggregates.update(pointer4, value4);
+        }
+
+        while (chunk1.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+
+            long pointer = find(aggregates, chunk1, word1, word2);
+            long value = value(chunk1);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk2.has()) {
+            long word1 = UNSAFE.getLong(chunk2.position);
+            long word2 = UNSAFE.getLong(chunk2.position + 8);
+
+            long pointer = find(aggregates, chunk2, word1, word2);
+            long value = value(chunk2);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk3.has()) {
+            long word1 = UNSAFE.getLong(chunk3.position);
+            long word2 = UNSAFE.getLong(chunk3.position + 8);
+
+            long pointer = find(aggregates, chunk3, word1, word2);
+            long value = value(chunk3);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk4.position);
+            long word2 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer = find(aggregates, chunk4, word1, word2);
+            long value = value(chunk4);
+
+            Aggregates.update(pointer, value);
+        }
+    }
+
+    static long find(Aggregates aggregates, Chunk chunk, long word1, long word2) {
+        long position = chunk.position;
+        long hash;
+
+        long comma1 = comma(word1);
+        long comma2 = comma(word2);
+
+        if ((comma1 | comma2) != 0) {
+            long mask2 = (comma1 == 0) ? -1 : 0;  // cmov
+            word1 = mask(word1, comma1);
+            word2 = mask(word2 & mask2, comma2);
+
+            hash = Aggregates.hash(word1 ^ word2);
+            chunk.position += length(comma1) + (length(comma2) & mask2) + 1;
+
+            long pointer = aggregates.pointer + hash;
+            long w1 = UNSAFE.getLong(pointer + 24);
+            long w2 = UNSAFE.getLong(pointer + 32);
+
+            // inlined find to drop 1 branch, compiler thinks that pointer can be 0 even if this condition is met
+            // ~10 ms win
+            if (word1 == w1 && word2 == w2) {
+                return pointer;
+            }
+
+            word1 = (comma1 == 0) ? word2 : word1;
+        } else {
+            chunk.position += 16;
+            hash = word1 ^ word2;
+
+            while (true) {
+                word1 = UNSAFE.getLong(chunk.position);
+                comma1 = comma(word1);
+
+                if (comma1 == 0) {
+                    chunk.position += 8;
+                    hash ^= word1;
+                    continue;
+                }
+
+                word1 = mask(word1, comma1);
+                hash = Aggregates.hash(hash ^ word1);
+                chunk.position += length(comma1) + 1;
+                break;
+            }
+        }
+
+        long length = chunk.position - position;
+        return aggregates.put(position, word1, length, hash);
+    }
+
+    static void loop(Summary summary, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit);
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+            long word3 = UNSAFE.getLong(chunk2.position);
+            long word4 = UNSAFE.getLong(chunk2.position + 8);
+            long word5 = UNSAFE.getLong(chunk3.position);
+            long word6 = UNSAFE.getLong(chunk3.position + 8);
+            long word7 = UNSAFE.getLong(chunk4.position);
+            long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+            // the summary can evict a slot, so each row is completed before the next lookup
+            long pointer1 = find(summary, chunk1, word1, word2);
+            summary.update(pointer1, value(chunk1));
+
+            long pointer2 = find(summary, chunk2, word3, word4);
+            summary.update(pointer2, value(chunk2));
+
+            long pointer3 = find(summary, chunk3, word5, word6);
+            summary.update(pointer3, value(chunk3));
+
+            long pointer4 = find(summary, chunk4, word7, word8);
+            summary.update(pointer4, value(chunk4));
+        }
+
+        loop(summary, chunk1);
+        loop(summary, chunk2);
+        loop(summary, chunk3);
+        loop(summary, chunk4);
+    }
+
+    static void loop(Summary summary, Chunk chunk) {
+        while (chunk.has()) {
+            long word1 = UNSAFE.getLong(chunk.position);
+            long word2 = UNSAFE.getLong(chunk.position + 8);
+
+            long pointer = find(summary, chunk, word1, word2);
+            summary.update(pointer, value(chunk));
+        }
+    }
+
+    static long find(Summary summary, Chunk chunk, long word1, long word2) {
+        long position = chunk.position;
+        long hash;
+
+        long comma1 = comma(word1);
+        long comma2 = comma(word2);
+
+        if ((comma1 | comma2) != 0) {
+            long mask2 = (comma1 == 0) ? -1 : 0;  // cmov
+            word1 = mask(word1, comma1);
+            word2 = mask(word2 & mask2, comma2);
+
+            hash = summary.hash(word1 ^ word2);
+            chunk.position += length(comma1) + (length(comma2) & mask2) + 1;
+
+            long pointer = summary.pointer + hash;
+            long w1 = UNSAFE.getLong(pointer + 24);
+            long w2 = UNSAFE.getLong(pointer + 32);
+
+            if (word1 == w1 && word2 == w2) {
+                return pointer;
+            }
+
+            word1 = (comma1 == 0) ? word2 : word1;
+        } else {
+            chunk.position += 16;
+            hash = word1 ^ word2;
+
+            while (true) {
+                word1 = UNSAFE.getLong(chunk.position);
+                comma1 = comma(word1);
+
+                if (comma1 == 0) {
+                    chunk.position += 8;
+                    hash ^= word1;
+                    continue;
+                }
+
+                word1 = mask(word1, comma1);
+                hash = summary.hash(hash ^ word1);
+                chunk.position += length(comma1) + 1;
+                break;
+            }
+        }
+
+        long length = chunk.position - position;
+        return summary.put(position, word1, length, hash);
+    }
+
+    static long comma(long word) {
+        long match = word ^ COMMA;
+        return (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+    }
+
+    static long mask(long word, long separator) {
+        long mask = separator ^ (separator - 1);
+        return word & mask;
+    }
+
+    static int length(long separator) {
+        return (Long.numberOfTrailingZeros(separator) >>> 3);
+    }
+
+    static int dot(long num) {
+        return Long.numberOfTrailingZeros(~num & DOT_BITS);
+    }
+
+    static long value(Chunk chunk) {
+        long num = UNSAFE.getLong(chunk.position);
+        long dot = dot(num);
+        long signed = (~num << 59) >> 63;
+        long mask = ~(signed & 0xFF);
+        long digits = ((num & mask) << (28 - dot)) & 0x0F000F0F00L;
+        long abs = ((digits * MAGIC_MULTIPLIER) >>> 32) & 0x3FF;
+        long value = (abs ^ signed) - signed;
+        chunk.position += (dot >> 3) + 3;
+        return value;
+    }
+
+    static class Aggregator extends Thread {
+        final AtomicReference<Aggregates> result;
+        final AtomicLong cursor;
+        final long start;
+        final long end;
+
+        public Aggregator(AtomicReference<Aggregates> result, AtomicLong cursor, long start, long end) {
+            this.result = result;
+            this.cursor = cursor;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            Aggregates aggregates = new Aggregates();
+
+            for (long position; (position = cursor.getAndAdd(SEGMENT)) < end; ) {
+                long limit = position + Math.min(end - position, SEGMENT + 1);
+
+                if (position > start) {
+                    position = next(position);
+                }
+
+                loop(aggregates, position, limit);
+            }
+
+            while (!result.compareAndSet(null, aggregates)) {
+                Aggregates rights = result.getAndSet(null);
+
+                if (rights != null) {
+                    aggregates.merge(rights);
+                }
+            }
+        }
+    }
+
+    static class Summarizer extends Thread {
+        final AtomicReference<Summary> result;
+        final AtomicLong cursor;
+        final long start;
+        final long end;
+        final int capacity;
+
+        public Summarizer(AtomicReference<Summary> result, AtomicLong cursor, long start, long end, int capacity) {
+            this.result = result;
+            this.cursor = cursor;
+            this.start = start;
+            this.end = end;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void run() {
+            Summary summary = new Summary(capacity);
+
+            for (long position; (position = cursor.getAndAdd(SEGMENT)) < end; ) {
+                long limit = position + Math.min(end - position, SEGMENT + 1);
+
+                if (position > start) {
+                    position = next(position);
+                }
+
+                loop(summary, position, limit);
+            }
+
+            while (!result.compareAndSet(null, summary)) {
+                Summary rights = result.getAndSet(null);
+
+                if (rights != null) {
+                    summary.merge(rights);
+                }
+            }
+        }
+    }
+
+    private record Aggregate(int min, int max, long sum, int cnt) {
+        @Override
+        public String toString() {
+            return (min / 10.0) + "/" + Challenge.round(sum / 10.0 / cnt) + "/" + (max / 10.0);
+        }
+    }
+
+    static class Aggregates {
+
+        private static final long ENTRIES = 64 * 1024;
+        private static final long SIZE = 128 * ENTRIES;
+        private static final long MASK = (ENTRIES - 1) << 7;
+
+        private final long pointer;
+
+        public Aggregates() {
+            long address = UNSAFE.allocateMemory(SIZE + 4096);
+            pointer = (address + 4095) & (~4095);
+
+            // from jvm sources: https://github.com/openjdk/jdk/blob/master/src/hotspot/share/utilities/copy.cpp#L213
+            // it tries to set memory atomically with long if the address is aligned by 8
+            // workaround to call memset
+            UNSAFE.putByte(pointer, (byte) 0);
+            UNSAFE.setMemory(pointer + 1, SIZE - 1, (byte) 0); // ~2 ms win
+        }
+
+        static long hash(long x) {
+            long h = x * -7046029254386353131L;
+            h ^= h >>> 35;
+            return h & MASK;
+        }
+
+        long find(long word1, long word2, long hash) {
+            long address = pointer + hash;
+            long w1 = UNSAFE.getLong(address + 24);
+            long w2 = UNSAFE.getLong(address + 32);
+            return (word1 == w1) && (word2 == w2) ? address : 0;
+        }
+
+        long put(long reference, long word, long length, long hash) {
+            for (long offset = hash; ; offset = next(offset)) {
+                long address = pointer + offset;
+                if (equal(address + 24, reference, word, length)) {
+                    return address;
+                }
+
+                int len = UNSAFE.getInt(address);
+                if (len == 0) {
+                    alloc(address, reference, length, hash);
+                    return address;
+                }
+            }
+        }
+
+        static void update(long address, long value) {
+            long sum = UNSAFE.getLong(address + 8) + value;
+            int cnt = UNSAFE.getInt(address + 16) + 1;
+            short min = UNSAFE.getShort(address + 20);
+            short max = UNSAFE.getShort(address + 22);
+
+            UNSAFE.putLong(address + 8, sum);
+            UNSAFE.putInt(address + 16, cnt);
+
+            if (value < min) {
+                UNSAFE.putShort(address + 20, (short) value);
+            }
+
+            if (value > max) {
+                UNSAFE.putShort(address + 22, (short) value);
+            }
+        }
+
+        void merge(Aggregates rights) {
+            for (long rightOffset = 0; rightOffset < SIZE; rightOffset += 128) {
+                long rightAddress = rights.pointer + rightOffset;
+                int length = UNSAFE.getInt(rightAddress);
+
+                if (length == 0) {
+                    continue;
+                }
+
+                int hash = UNSAFE.getInt(rightAddress + 4);
+
+                for (long offset = hash; ; offset = next(offset)) {
+                    long address = pointer + offset;
+
+                    if (equal(address + 24, rightAddress + 24, length)) {
+                        long sum = UNSAFE.getLong(address + 8) + UNSAFE.getLong(rightAddress + 8);
+                        int cnt = UNSAFE.getInt(address + 16) + UNSAFE.getInt(rightAddress + 16);
+                        short min = (short) Math.min(UNSAFE.getShort(address + 20), UNSAFE.getShort(rightAddress + 20));
+                        short max = (short) Math.max(UNSAFE.getShort(address + 22), UNSAFE.getShort(rightAddress + 22));
+
+                        UNSAFE.putLong(address + 8, sum);
+                        UNSAFE.putInt(address + 16, cnt);
+                        UNSAFE.putShort(address + 20, min);
+                        UNSAFE.putShort(address + 22, max);
+                        break;
+                    }
+
+                    int len = UNSAFE.getInt(address);
+
+                    if (len == 0) {
+                        UNSAFE.copyMemory(rightAddress, address, length + 24);
+                        break;
+                    }
+                }
+            }
+        }
+
+        Map<String, Aggregate> build() {
+            TreeMap<String, Aggregate> set = new TreeMap<>();
+
+            for (long offset = 0; offset < SIZE; offset += 128) {
+                long address = pointer + offset;
+                int length = UNSAFE.getInt(address);
+
+                if (length != 0) {
+                    byte[] array = new byte[length - 1];
+                    UNSAFE.copyMemory(null, address + 24, array, Unsafe.ARRAY_BYTE_BASE_OFFSET, array.length);
+                    String key = new String(array);
+
+                    long sum = UNSAFE.getLong(address + 8);
+                    int cnt = UNSAFE.getInt(address + 16);
+                    short min = UNSAFE.getShort(address + 20);
+                    short max = UNSAFE.getShort(address + 22);
+
+                    Aggregate aggregate = new Aggregate(min, max, sum, cnt);
+                    set.put(key, aggregate);
+                }
+            }
+
+            return set;
+        }
+
+        static void alloc(long address, long position, long length, long hash) {
+            UNSAFE.putInt(address, (int) length);
+            UNSAFE.putInt(address + 4, (int) hash);
+            UNSAFE.putShort(address + 20, Short.MAX_VALUE);
+            UNSAFE.putShort(address + 22, Short.MIN_VALUE);
+            UNSAFE.copyMemory(position, address + 24, length);
+        }
+
+        static long next(long prev) {
+            return (prev + 128) & (SIZE - 1);
+        }
+
+        static boolean equal(long address, long position, long word, long length) {
+            while (length > 8) {
+                long left = UNSAFE.getLong(position);
+                long right = UNSAFE.getLong(address);
+
+                if (left != right) {
+                    return false;
+                }
+
+                position += 8;
+                address += 8;
+                length -= 8;
+            }
+
+            return word == UNSAFE.getLong(address);
+        }
+
+        static boolean equal(long leftAddress, long rightAddress, long length) {
+            do {
+                long left = UNSAFE.getLong(leftAddress);
+                long right = UNSAFE.getLong(rightAddress);
+
+                if (left != right) {
+                    return false;
+                }
+
+                leftAddress += 8;
+                rightAddress += 8;
+                length -= 8;
+            } while (length > 0);
+
+            return true;
+        }
+    }
+
+    private record Hitter(Aggregate aggregate, long count) {
+        @Override
+        public String toString() {
+            return aggregate + "/" + count;
+        }
+    }
+
+    /**
+     * SpaceSaving summary: a fixed-size table which keeps the stations with the highest counts.
+     * A new station replaces the one with the minimum count and inherits that count as an error,
+     * so the memory is O(capacity) regardless of the number of stations and the count is an upper bound.
+     * Every station with more than N / capacity rows is guaranteed to stay in the table.
+     * <p>
+     * Slots are 256 bytes: the layout of {@link Aggregates} plus [error][heap index].
+     * The heap is a min-heap of slot offsets ordered by count = cnt + error.
+     */
+    static class Summary {
+
+        private final long size;
+        private final long mask;
+        private final long pointer;
+        private final int[] heap;
+        private int used;
+
+        public Summary(int capacity) {
+            long entries = Long.highestOneBit(4L * capacity - 1) << 1; // load factor <= 0.25
+            size = entries << 8;
+            mask = (entries - 1) << 8;
+            heap = new int[capacity];
+
+            long address = UNSAFE.allocateMemory(size + 4096);
+            pointer = (address + 4095) & (~4095);
+            UNSAFE.setMemory(pointer, size, (byte) 0);
+        }
+
+        long hash(long x) {
+            long h = x * -7046029254386353131L;
+            h ^= h >>> 35;
+            return h & mask;
+        }
+
+        long put(long reference, long word, long length, long hash) {
+            for (long offset = hash; ; offset = next(offset)) {
+                long address = pointer + offset;
+                if (Aggregates.equal(address + 24, reference, word, length)) {
+                    return address;
+                }
+
+                int len = UNSAFE.getInt(address);
+                if (len == 0) {
+                    return admit(reference, length, hash);
+                }
+            }
+        }
+
+        void update(long address, long value) {
+            Aggregates.update(address, value);
+            down(UNSAFE.getInt(address + 136));
+        }
+
+        void merge(Summary rights) {
+            for (int i = 0; i < rights.used; i++) {
+                long rightAddress = rights.pointer + rights.heap[i];
+                int length = UNSAFE.getInt(rightAddress);
+                int hash = UNSAFE.getInt(rightAddress + 4);
+                long address;
+
+                for (long offset = hash; ; offset = next(offset)) {
+                    address = pointer + offset;
+
+                    if (Aggregates.equal(address + 24, rightAddress + 24, length)) {
+                        break;
+                    }
+
+                    if (UNSAFE.getInt(address) == 0) {
+                        address = admit(rightAddress + 24, length, hash);
+                        break;
+                    }
+                }
+
+                long sum = UNSAFE.getLong(address + 8) + UNSAFE.getLong(rightAddress + 8);
+                int cnt = UNSAFE.getInt(address + 16) + UNSAFE.getInt(rightAddress + 16);
+                short min = (short) Math.min(UNSAFE.getShort(address + 20), UNSAFE.getShort(rightAddress + 20));
+                short max = (short) Math.max(UNSAFE.getShort(address + 22), UNSAFE.getShort(rightAddress + 22));
+                long error = UNSAFE.getLong(address + 128) + UNSAFE.getLong(rightAddress + 128);
+
+                UNSAFE.putLong(address + 8, sum);
+                UNSAFE.putInt(address + 16, cnt);
+                UNSAFE.putShort(address + 20, min);
+                UNSAFE.putShort(address + 22, max);
+                UNSAFE.putLong(address + 128, error);
+                down(UNSAFE.getInt(address + 136));
+            }
+        }
+
+        Map<String, Hitter> build(int top) {
+            List<Long> addresses = new ArrayList<>();
+
+            for (int i = 0; i < used; i++) {
+                addresses.add(pointer + heap[i]);
+            }
+
+            addresses.sort(Comparator.comparingLong(Summary::count).reversed().thenComparing(Summary::key));
+            LinkedHashMap<String, Hitter> set = new LinkedHashMap<>();
+
+            for (long address : addresses.subList(0, Math.min(top, addresses.size()))) {
+                long sum = UNSAFE.getLong(address + 8);
+                int cnt = UNSAFE.getInt(address + 16);
+                short min = UNSAFE.getShort(address + 20);
+                short max = UNSAFE.getShort(address + 22);
+
+                Aggregate aggregate = new Aggregate(min, max, sum, cnt);
+                set.put(key(address), new Hitter(aggregate, count(address)));
+            }
+
+            return set;
+        }
+
+        // takes a free slot, evicts the station with the minimum count if the table is full
+        private long admit(long reference, long length, long hash) {
+            int index = used;
+            long error = 0;
+
+            if (used == heap.length) {
+                index = 0;
+                error = count(pointer + heap[0]);
+                remove(heap[0]);
+            } else {
+                used++;
+            }
+
+            long offset = hash;
+            while (UNSAFE.getInt(pointer + offset) != 0) {
+                offset = next(offset);
+            }
+
+            long address = pointer + offset;
+            Aggregates.alloc(address, reference, length, hash);
+            UNSAFE.putLong(address + 128, error);
+            UNSAFE.putInt(address + 136, index);
+            heap[index] = (int) offset;
+            up(index);
+            return address;
+        }
+
+        // backward shift deletion, keeps probe sequences intact without tombstones
+        private void remove(long offset) {
+            long hole = offset;
+
+            for (long next = next(hole); UNSAFE.getInt(pointer + next) != 0; next = next(next)) {
+                long home = UNSAFE.getInt(pointer + next + 4);
+
+                if (((next - home) & (size - 1)) >= ((next - hole) & (size - 1))) {
+                    UNSAFE.copyMemory(pointer + next, pointer + hole, 256);
+                    heap[UNSAFE.getInt(pointer + hole + 136)] = (int) hole;
+                    hole = next;
+                }
+            }
+
+            UNSAFE.setMemory(pointer + hole, 256, (byte) 0);
+        }
+
+        private void up(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >> 1;
+
+                if (count(pointer + heap[parent]) <= count(pointer + heap[index])) {
+                    break;
+                }
+
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void down(int index) {
+            while (true) {
+                int child = 2 * index + 1;
+
+                if (child >= used) {
+                    break;
+                }
+
+                if (child + 1 < used && count(pointer + heap[child + 1]) < count(pointer + heap[child])) {
+                    child++;
+                }
+
+                if (count(pointer + heap[index]) <= count(pointer + heap[child])) {
+                    break;
+                }
+
+                swap(index, child);
+                index = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int left = heap[i];
+            int right = heap[j];
+
+            heap[i] = right;
+            heap[j] = left;
+
+            UNSAFE.putInt(pointer + right + 136, i);
+            UNSAFE.putInt(pointer + left + 136, j);
+        }
+
+        private long next(long prev) {
+            return (prev + 256) & (size - 1);
+        }
+
+        private static long count(long address) {
+            return UNSAFE.getInt(address + 16) + UNSAFE.getLong(address + 128);
+        }
+
+        private static String key(long address) {
+            byte[] array = new byte[UNSAFE.getInt(address) - 1];
+            UNSAFE.copyMemory(null, address + 24, array, Unsafe.ARRAY_BYTE_BASE_OFFSET, array.length);
+            return new String(array);
+        }
+    }
+
+    static class Chunk {
+        final long limit;
+        long position;
+
+        public Chunk(long position, long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean has() {
+            return position < limit;
+        }
+    }
+}
\ No newline at end of file
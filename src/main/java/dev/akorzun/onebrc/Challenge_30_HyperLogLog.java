@@ -0,0 +1,764 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.akorzun.onebrc;
+
+import sun.misc.Unsafe;
+
+import java.io.PrintStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class Challenge_30_HyperLogLog implements Challenge {
+
+    private static final long SEGMENT = 2 * 1024 * 1024;   // 2 MB
+    private static final long COMMA = 0x3B3B3B3B3B3B3B3BL; // ;;;;;;;;
+    private static final long LINE = 0x0A0A0A0A0A0A0A0AL;  // /n/n/n/n/n/n/n/
+    private static final long DOT_BITS = 0x10101000;
+    private static final long MAGIC_MULTIPLIER = (100 * 0x1000000 + 10 * 0x10000 + 1);
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            UNSAFE = (Unsafe) unsafe.get(Unsafe.class);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (isSpawn(args)) {
+            spawn();
+            return;
+        }
+
+        new Challenge_30_HyperLogLog().run(args);
+    }
+
+    static boolean isSpawn(String[] args) {
+        for (String arg : args) {
+            if ("--worker".equals(arg)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static void spawn() throws Exception {
+        ProcessHandle.Info info = ProcessHandle.current().info();
+        ArrayList<String> commands = new ArrayList<>();
+        Optional<String> command = info.command();
+        Optional<String[]> arguments = info.arguments();
+
+        command.ifPresent(commands::add);
+        arguments.ifPresent(strings -> commands.addAll(Arrays.asList(strings)));
+        commands.add("--worker");
+
+        new ProcessBuilder()
+                .command(commands)
+                .start()
+                .getInputStream()
+                .transferTo(System.out);
+    }
+
+    @Override
+    public void solve(String[] args, Path file, PrintStream output) throws Exception {
+        boolean distinct = false;
+        int samples = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--count-distinct":
+                    distinct = true;
+                    break;
+                case "--auto-capacity":
+                    samples = Integer.parseInt(args[i + 1]);
+                    break;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.global());
+            long start = segment.address();
+            long end = segment.address() + segment.byteSize();
+
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            Aggregator[] aggregators = new Aggregator[parallelism];
+            long entries = Aggregates.ENTRIES;
+
+            if (samples > 0) {
+                // single threaded pre-pass over the first segments, the table grows if the sample was not representative
+                HyperLogLog sample = new HyperLogLog();
+                count(sample, start, Math.min(end, start + samples * SEGMENT));
+                entries = Aggregates.capacity(sample.estimate());
+            }
+
+            AtomicReference<Aggregates> result = new AtomicReference<>();
+            AtomicReference<HyperLogLog> sketch = new AtomicReference<>();
+            AtomicLong cursor = new AtomicLong(start);
+
+            for (int i = 0; i < parallelism; i++) {
+                aggregators[i] = new Aggregator(distinct ? sketch : null, result, cursor, start, end, entries);
+                aggregators[i].start();
+            }
+
+            for (Aggregator aggregator : aggregators) {
+                aggregator.join();
+            }
+
+            output.println(distinct ? sketch.get().estimate() : result.get().build());
+            output.close();
+        }
+    }
+
+    static long next(long position) {
+        while (true) {
+            long word = UNSAFE.getLong(position);
+            long match = word ^ LINE;
+            long line = (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+
+            if (line == 0) {
+                position += 8;
+                continue;
+            }
+
+            return position + (Long.numberOfTrailingZeros(line) >>> 3) + 1;
+        }
+    }
+
+    static void loop(Aggregates aggregates, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit); // ~20ms win
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            if (aggregates.full()) {
+                aggregates.grow(); // at most 4 new keys per iteration, so pointers stay valid until the end of it
+            }
+
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+            long word3 = UNSAFE.getLong(chunk2.position);
+            long word4 = UNSAFE.getLong(chunk2.position + 8);
+            long word5 = UNSAFE.getLong(chunk3.position);
+            long word6 = UNSAFE.getLong(chunk3.position + 8);
+            long word7 = UNSAFE.getLong(chunk4.position);
+            long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer1 = find(aggregates, chunk1, word1, word2);
+            long pointer2 = find(aggregates, chunk2, word3, word4);
+            long pointer3 = find(aggregates, chunk3, word5, word6);
+            long pointer4 = find(aggregates, chunk4, word7, word8);
+
+            long value1 = value(chunk1);
+            long value2 = value(chunk2);
+            long value3 = value(chunk3);
+            long value4 = value(chunk4);
+
+            Aggregates.update(pointer1, value1);
+            Aggregates.update(pointer2, value2);
+            Aggregates.update(pointer3, value3);
+            Aggregates.update(pointer4, value4);
+        }
+
+        while (chunk1.has()) {
+            if (aggregates.full()) {
+                aggregates.grow();
+            }
+
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+
+            long pointer = find(aggregates, chunk1, word1, word2);
+            long value = value(chunk1);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk2.has()) {
+            if (aggregates.full()) {
+                aggregates.grow();
+            }
+
+            long word1 = UNSAFE.getLong(chunk2.position);
+            long word2 = UNSAFE.getLong(chunk2.position + 8);
+
+            long pointer = find(aggregates, chunk2, word1, word2);
+            long value = value(chunk2);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk3.has()) {
+            if (aggregates.full()) {
+                aggregates.grow();
+            }
+
+            long word1 = UNSAFE.getLong(chunk3.position);
+            long word2 = UNSAFE.getLong(chunk3.position + 8);
+
+            long pointer = find(aggregates, chunk3, word1, word2);
+            long value = value(chunk3);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk4.has()) {
+            if (aggregates.full()) {
+                aggregates.grow();
+            }
+
+            long word1 = UNSAFE.getLong(chunk4.position);
+            long word2 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer = find(aggregates, chunk4, word1, word2);
+            long value = value(chunk4);
+
+            Aggregates.update(pointer, value);
+        }
+    }
+
+    static long find(Aggregates aggregates, Chunk chunk, long word1, long word2) {
+        long position = chunk.position;
+        long hash;
+
+        long comma1 = comma(word1);
+        long comma2 = comma(word2);
+
+        if ((comma1 | comma2) != 0) {
+            long mask2 = (comma1 == 0) ? -1 : 0;  // cmov
+            word1 = mask(word1, comma1);
+            word2 = mask(word2 & mask2, comma2);
+
+            hash = aggregates.hash(word1 ^ word2);
+            chunk.position += length(comma1) + (length(comma2) & mask2) + 1;
+
+            long pointer = aggregates.pointer + hash;
+            long w1 = UNSAFE.getLong(pointer + 24);
+            long w2 = UNSAFE.getLong(pointer + 32);
+
+            // inlined find to drop 1 branch, compiler thinks that pointer can be 0 even if this condition is met
+            // ~10 ms win
+            if (word1 == w1 && word2 == w2) {
+                return pointer;
+            }
+
+            word1 = (comma1 == 0) ? word2 : word1;
+        } else {
+            chunk.position += 16;
+            hash = word1 ^ word2;
+
+            while (true) {
+                word1 = UNSAFE.getLong(chunk.position);
+                comma1 = comma(word1);
+
+                if (comma1 == 0) {
+                    chunk.position += 8;
+                    hash ^= word1;
+                    continue;
+                }
+
+                word1 = mask(word1, comma1);
+                hash = aggregates.hash(hash ^ word1);
+                chunk.position += length(comma1) + 1;
+                break;
+            }
+        }
+
+        long length = chunk.position - position;
+        return aggregates.put(position, word1, length, hash);
+    }
+
+    static void count(HyperLogLog sketch, long position, long limit) {
+        Chunk chunk = new Chunk(position, limit);
+
+        while (chunk.has()) {
+            long word1 = UNSAFE.getLong(chunk.position);
+            long word2 = UNSAFE.getLong(chunk.position + 8);
+
+            sketch.add(hash(chunk, word1, word2));
+            skip(chunk);
+        }
+    }
+
+    // the same words and mixing as in find(), but without the table mask
+    static long hash(Chunk chunk, long word1, long word2) {
+        long comma1 = comma(word1);
+        long comma2 = comma(word2);
+
+        if ((comma1 | comma2) != 0) {
+            long mask2 = (comma1 == 0) ? -1 : 0;  // cmov
+            word1 = mask(word1, comma1);
+            word2 = mask(word2 & mask2, comma2);
+            chunk.position += length(comma1) + (length(comma2) & mask2) + 1;
+            return Aggregates.mix(word1 ^ word2);
+        }
+
+        chunk.position += 16;
+        long hash = word1 ^ word2;
+
+        while (true) {
+            word1 = UNSAFE.getLong(chunk.position);
+            comma1 = comma(word1);
+
+            if (comma1 == 0) {
+                chunk.position += 8;
+                hash ^= word1;
+                continue;
+            }
+
+            word1 = mask(word1, comma1);
+            chunk.position += length(comma1) + 1;
+            return Aggregates.mix(hash ^ word1);
+        }
+    }
+
+    static long comma(long word) {
+        long match = word ^ COMMA;
+        return (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+    }
+
+    static long mask(long word, long separator) {
+        long mask = separator ^ (separator - 1);
+        return word & mask;
+    }
+
+    static int length(long separator) {
+        return (Long.numberOfTrailingZeros(separator) >>> 3);
+    }
+
+    static int dot(long num) {
+        return Long.numberOfTrailingZeros(~num & DOT_BITS);
+    }
+
+    static void skip(Chunk chunk) {
+        long num = UNSAFE.getLong(chunk.position);
+        chunk.position += (dot(num) >> 3) + 3;
+    }
+
+    static long value(Chunk chunk) {
+        long num = UNSAFE.getLong(chunk.position);
+        long dot = dot(num);
+        long signed = (~num << 59) >> 63;
+        long mask = ~(signed & 0xFF);
+        long digits = ((num & mask) << (28 - dot)) & 0x0F000F0F00L;
+        long abs = ((digits * MAGIC_MULTIPLIER) >>> 32) & 0x3FF;
+        long value = (abs ^ signed) - signed;
+        chunk.position += (dot >> 3) + 3;
+        return value;
+    }
+
+    static class Aggregator extends Thread {
+        final AtomicReference<HyperLogLog> sketch;
+        final AtomicReference<Aggregates> result;
+        final AtomicLong cursor;
+        final long start;
+        final long end;
+        final long entries;
+
+        public Aggregator(AtomicReference<HyperLogLog> sketch, AtomicReference<Aggregates> result,
+                          AtomicLong cursor, long start, long end, long entries) {
+            this.sketch = sketch;
+            this.result = result;
+            this.cursor = cursor;
+            this.start = start;
+            this.end = end;
+            this.entries = entries;
+        }
+
+        @Override
+        public void run() {
+            if (sketch != null) {
+                distinct();
+                return;
+            }
+
+            Aggregates aggregates = new Aggregates(entries);
+
+            for (long position; (position = cursor.getAndAdd(SEGMENT)) < end; ) {
+                long limit = position + Math.min(end - position, SEGMENT + 1);
+
+                if (position > start) {
+                    position = next(position);
+                }
+
+                loop(aggregates, position, limit);
+            }
+
+            while (!result.compareAndSet(null, aggregates)) {
+                Aggregates rights = result.getAndSet(null);
+
+                if (rights != null) {
+                    aggregates.merge(rights);
+                }
+            }
+        }
+
+        void distinct() {
+            HyperLogLog counter = new HyperLogLog();
+
+            for (long position; (position = cursor.getAndAdd(SEGMENT)) < end; ) {
+                long limit = position + Math.min(end - position, SEGMENT + 1);
+
+                if (position > start) {
+                    position = next(position);
+                }
+
+                count(counter, position, limit);
+            }
+
+            while (!sketch.compareAndSet(null, counter)) {
+                HyperLogLog rights = sketch.getAndSet(null);
+
+                if (rights != null) {
+                    counter.merge(rights);
+                }
+            }
+        }
+    }
+
+    private record Aggregate(int min, int max, long sum, int cnt) {
+        @Override
+        public String toString() {
+            return (min / 10.0) + "/" + Challenge.round(sum / 10.0 / cnt) + "/" + (max / 10.0);
+        }
+    }
+
+    static class Aggregates {
+
+        private static final long ENTRIES = 64 * 1024;
+        private static final long MIN_ENTRIES = 1024;
+
+        private long pointer;
+        private long size;
+        private long mask;
+        private long count;
+        private long limit;
+
+        public Aggregates(long entries) {
+            init(entries);
+        }
+
+        private void init(long entries) {
+            size = 128 * entries;
+            mask = (entries - 1) << 7;
+            limit = entries / 2;
+            count = 0;
+
+            long address = UNSAFE.allocateMemory(size + 4096);
+            pointer = (address + 4095) & (~4095);
+
+            // from jvm sources: https://github.com/openjdk/jdk/blob/master/src/hotspot/share/utilities/copy.cpp#L213
+            // it tries to set memory atomically with long if the address is aligned by 8
+            // workaround to call memset
+            UNSAFE.putByte(pointer, (byte) 0);
+            UNSAFE.setMemory(pointer + 1, size - 1, (byte) 0); // ~2 ms win
+        }
+
+        // keeps the load factor under 1/4 for the estimated number of keys
+        static long capacity(long keys) {
+            long entries = Long.highestOneBit(Math.max(4 * keys, MIN_ENTRIES) - 1) << 1;
+            return Math.max(entries, MIN_ENTRIES);
+        }
+
+        static long mix(long x) {
+            long h = x * -7046029254386353131L;
+            h ^= h >>> 35;
+            return h;
+        }
+
+        // the same hash as computed in find(): xor of the masked key words including the separator
+        static long mix(long address, long length) {
+            long x = 0;
+
+            for (long offset = 0; offset < length; offset += 8) {
+                x ^= UNSAFE.getLong(address + offset);
+            }
+
+            return mix(x);
+        }
+
+        long hash(long x) {
+            return mix(x) & mask;
+        }
+
+        boolean full() {
+            return count >= limit;
+        }
+
+        void grow() {
+            long oldPointer = pointer;
+            long oldSize = size;
+            init(2 * (size >> 7));
+
+            for (long offset = 0; offset < oldSize; offset += 128) {
+                long oldAddress = oldPointer + offset;
+                int length = UNSAFE.getInt(oldAddress);
+
+                if (length != 0) {
+                    long hash = mix(oldAddress + 24, length) & mask;
+                    long slot = hash;
+
+                    while (UNSAFE.getInt(pointer + slot) != 0) {
+                        slot = next(slot);
+                    }
+
+                    // the home slot, not the probed one, merge() starts probing from it
+                    long address = pointer + slot;
+                    UNSAFE.copyMemory(oldAddress, address, 128);
+                    UNSAFE.putInt(address + 4, (int) hash);
+                    count++;
+                }
+            }
+        }
+
+        long find(long word1, long word2, long hash) {
+            long address = pointer + hash;
+            long w1 = UNSAFE.getLong(address + 24);
+            long w2 = UNSAFE.getLong(address + 32);
+            return (word1 == w1) && (word2 == w2) ? address : 0;
+        }
+
+        long put(long reference, long word, long length, long hash) {
+            for (long offset = hash; ; offset = next(offset)) {
+                long address = pointer + offset;
+                if (equal(address + 24, reference, word, length)) {
+                    return address;
+                }
+
+                int len = UNSAFE.getInt(address);
+                if (len == 0) {
+                    alloc(address, reference, length, hash);
+                    count++;
+                    return address;
+                }
+            }
+        }
+
+        static void update(long address, long value) {
+            long sum = UNSAFE.getLong(address + 8) + value;
+            int cnt = UNSAFE.getInt(address + 16) + 1;
+            short min = UNSAFE.getShort(address + 20);
+            short max = UNSAFE.getShort(address + 22);
+
+            UNSAFE.putLong(address + 8, sum);
+            UNSAFE.putInt(address + 16, cnt);
+
+            if (value < min) {
+                UNSAFE.putShort(address + 20, (short) value);
+            }
+
+            if (value > max) {
+                UNSAFE.putShort(address + 22, (short) value);
+            }
+        }
+
+        void merge(Aggregates rights) {
+            for (long rightOffset = 0; rightOffset < rights.size; rightOffset += 128) {
+                long rightAddress = rights.pointer + rightOffset;
+                int length = UNSAFE.getInt(rightAddress);
+
+                if (length == 0) {
+                    continue;
+                }
+
+                if (full()) {
+                    grow();
+                }
+
+                // the tables can have different sizes after growing
+                long hash = (size == rights.size) ? UNSAFE.getInt(rightAddress + 4) : mix(rightAddress + 24, length) & mask;
+
+                for (long offset = hash; ; offset = next(offset)) {
+                    long address = pointer + offset;
+
+                    if (equal(address + 24, rightAddress + 24, length)) {
+                        long sum = UNSAFE.getLong(address + 8) + UNSAFE.getLong(rightAddress + 8);
+                        int cnt = UNSAFE.getInt(address + 16) + UNSAFE.getInt(rightAddress + 16);
+                        short min = (short) Math.min(UNSAFE.getShort(address + 20), UNSAFE.getShort(rightAddress + 20));
+                        short max = (short) Math.max(UNSAFE.getShort(address + 22), UNSAFE.getShort(rightAddress + 22));
+
+                        UNSAFE.putLong(address + 8, sum);
+                        UNSAFE.putInt(address + 16, cnt);
+                        UNSAFE.putShort(address + 20, min);
+                        UNSAFE.putShort(address + 22, max);
+                        break;
+                    }
+
+                    int len = UNSAFE.getInt(address);
+
+                    if (len == 0) {
+                        UNSAFE.copyMemory(rightAddress, address, length + 24);
+                        UNSAFE.putInt(address + 4, (int) hash);
+                        count++;
+                        break;
+                    }
+                }
+            }
+        }
+
+        Map<String, Aggregate> build() {
+            TreeMap<String, Aggregate> set = new TreeMap<>();
+
+            for (long offset = 0; offset < size; offset += 128) {
+                long address = pointer + offset;
+                int length = UNSAFE.getInt(address);
+
+                if (length != 0) {
+                    byte[] array = new byte[length - 1];
+                    UNSAFE.copyMemory(null, address + 24, array, Unsafe.ARRAY_BYTE_BASE_OFFSET, array.length);
+                    String key = new String(array);
+
+                    long sum = UNSAFE.getLong(address + 8);
+                    int cnt = UNSAFE.getInt(address + 16);
+                    short min = UNSAFE.getShort(address + 20);
+                    short max = UNSAFE.getShort(address + 22);
+
+                    Aggregate aggregate = new Aggregate(min, max, sum, cnt);
+                    set.put(key, aggregate);
+                }
+            }
+
+            return set;
+        }
+
+        static void alloc(long address, long position, long length, long hash) {
+            UNSAFE.putInt(address, (int) length);
+            UNSAFE.putInt(address + 4, (int) hash);
+            UNSAFE.putShort(address + 20, Short.MAX_VALUE);
+            UNSAFE.putShort(address + 22, Short.MIN_VALUE);
+            UNSAFE.copyMemory(position, address + 24, length);
+        }
+
+        long next(long prev) {
+            return (prev + 128) & (size - 1);
+        }
+
+        static boolean equal(long address, long position, long word, long length) {
+            while (length > 8) {
+                long left = UNSAFE.getLong(position);
+                long right = UNSAFE.getLong(address);
+
+                if (left != right) {
+                    return false;
+                }
+
+                position += 8;
+                address += 8;
+                length -= 8;
+            }
+
+            return word == UNSAFE.getLong(address);
+        }
+
+        static boolean equal(long leftAddress, long rightAddress, long length) {
+            do {
+                long left = UNSAFE.getLong(leftAddress);
+                long right = UNSAFE.getLong(rightAddress);
+
+                if (left != right) {
+                    return false;
+                }
+
+                leftAddress += 8;
+                rightAddress += 8;
+                length -= 8;
+            } while (length > 0);
+
+            return true;
+        }
+    }
+
+    /**
+     * HyperLogLog with 2^14 registers, the standard error is 1.04 / sqrt(2^14) ~ 0.8%.
+     * The register is picked by the highest bits of the hash, the rank is taken from the rest.
+     */
+    static class HyperLogLog {
+
+        private static final int P = 14;
+        private static final int M = 1 << P;
+        private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+        private final byte[] registers = new byte[M];
+
+        void add(long hash) {
+            int index = (int) (hash >>> (64 - P));
+            byte rank = (byte) (Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1))) + 1);
+
+            if (rank > registers[index]) {
+                registers[index] = rank;
+            }
+        }
+
+        void merge(HyperLogLog rights) {
+            for (int i = 0; i < M; i++) {
+                registers[i] = (byte) Math.max(registers[i], rights.registers[i]);
+            }
+        }
+
+        long estimate() {
+            double sum = 0;
+            int zeros = 0;
+
+            for (byte register : registers) {
+                sum += 1.0 / (1L << register);
+                zeros += (register == 0) ? 1 : 0;
+            }
+
+            double estimate = ALPHA * M * M / sum;
+
+            if (estimate <= 2.5 * M && zeros != 0) {
+                estimate = M * Math.log((double) M / zeros); // linear counting for small cardinalities
+            }
+
+            return Math.round(estimate);
+        }
+    }
+
+    static class Chunk {
+        final long limit;
+        long position;
+
+        public Chunk(long position, long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean has() {
+            return position < limit;
+        }
+    }
+}
\ No newline at end of file
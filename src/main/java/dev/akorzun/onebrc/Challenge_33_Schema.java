@@ -0,0 +1,836 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.akorzun.onebrc;
+
+import sun.misc.Unsafe;
+
+import java.io.PrintStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+
+public class Challenge_33_Schema implements Challenge {
+
+    private static final long SEGMENT = 2 * 1024 * 1024;   // 2 MB
+    private static final long COMMA = 0x3B3B3B3B3B3B3B3BL; // ;;;;;;;;
+    private static final long LINE = 0x0A0A0A0A0A0A0A0AL;  // /n/n/n/n/n/n/n/
+    private static final long DOT_BITS = 0x10101000;
+    private static final long MAGIC_MULTIPLIER = (100 * 0x1000000 + 10 * 0x10000 + 1);
+    private static final long[] POWERS = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000};
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            UNSAFE = (Unsafe) unsafe.get(Unsafe.class);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (isSpawn(args)) {
+            spawn();
+            return;
+        }
+
+        new Challenge_33_Schema().run(args);
+    }
+
+    static boolean isSpawn(String[] args) {
+        for (String arg : args) {
+            if ("--worker".equals(arg)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static void spawn() throws Exception {
+        ProcessHandle.Info info = ProcessHandle.current().info();
+        ArrayList<String> commands = new ArrayList<>();
+        Optional<String> command = info.command();
+        Optional<String[]> arguments = info.arguments();
+
+        command.ifPresent(commands::add);
+        arguments.ifPresent(strings -> commands.addAll(Arrays.asList(strings)));
+        commands.add("--worker");
+
+        new ProcessBuilder()
+                .command(commands)
+                .start()
+                .getInputStream()
+                .transferTo(System.out);
+    }
+
+    @Override
+    public void solve(String[] args, Path file, PrintStream output) throws Exception {
+        Schema schema = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--schema")) {
+                schema = Schema.parse(args[i + 1]);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.global());
+            long start = segment.address();
+            long end = segment.address() + segment.byteSize();
+
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            Aggregator[] aggregators = new Aggregator[parallelism];
+
+            AtomicReference<Aggregates> result = new AtomicReference<>();
+            AtomicLong cursor = new AtomicLong(start);
+
+            for (int i = 0; i < parallelism; i++) {
+                aggregators[i] = new Aggregator(result, cursor, start, end, schema);
+                aggregators[i].start();
+            }
+
+            for (Aggregator aggregator : aggregators) {
+                aggregator.join();
+            }
+
+            Aggregates aggregates = result.get();
+            output.println((schema == null) ? aggregates.build() : aggregates.build(schema));
+            output.close();
+        }
+    }
+
+    static long next(long position) {
+        while (true) {
+            long word = UNSAFE.getLong(position);
+            long match = word ^ LINE;
+            long line = (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+
+            if (line == 0) {
+                position += 8;
+                continue;
+            }
+
+            return position + (Long.numberOfTrailingZeros(line) >>> 3) + 1;
+        }
+    }
+
+    static void loop(Aggregates aggregates, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit); // ~20ms win
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+            long word3 = UNSAFE.getLong(chunk2.position);
+            long word4 = UNSAFE.getLong(chunk2.position + 8);
+            long word5 = UNSAFE.getLong(chunk3.position);
+            long word6 = UNSAFE.getLong(chunk3.position + 8);
+            long word7 = UNSAFE.getLong(chunk4.position);
+            long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer1 = find(aggregates, chunk1, word1, word2);
+            long pointer2 = find(aggregates, chunk2, word3, word4);
+            long pointer3 = find(aggregates, chunk3, word5, word6);
+            long pointer4 = find(aggregates, chunk4, word7, word8);
+
+            long value1 = value(chunk1);
+            long value2 = value(chunk2);
+            long value3 = value(chunk3);
+            long value4 = value(chunk4);
+
+            Aggregates.update(pointer1, value1);
+            Aggregates.update(pointer2, value2);
+            Aggregates.update(pointer3, value3);
+            Aggregates.update(pointer4, value4);
+        }
+
+        while (chunk1.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+
+            long pointer = find(aggregates, chunk1, word1, word2);
+            long value = value(chunk1);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk2.has()) {
+            long word1 = UNSAFE.getLong(chunk2.position);
+            long word2 = UNSAFE.getLong(chunk2.position + 8);
+
+            long pointer = find(aggregates, chunk2, word1, word2);
+            long value = value(chunk2);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk3.has()) {
+            long word1 = UNSAFE.getLong(chunk3.position);
+            long word2 = UNSAFE.getLong(chunk3.position + 8);
+
+            long pointer = find(aggregates, chunk3, word1, word2);
+            long value = value(chunk3);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk4.position);
+            long word2 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer = find(aggregates, chunk4, word1, word2);
+            long value = value(chunk4);
+
+            Aggregates.update(pointer, value);
+        }
+    }
+
+    static void loop(Aggregates aggregates, Schema schema, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit);
+
+        byte[] types = schema.types;
+        long[] values1 = new long[types.length];
+        long[] values2 = new long[types.length];
+        long[] values3 = new long[types.length];
+        long[] values4 = new long[types.length];
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            long pointer1 = 0;
+            long pointer2 = 0;
+            long pointer3 = 0;
+            long pointer4 = 0;
+
+            // column by column for 4 rows at once, so the rows still overlap in the pipeline
+            for (int column = 0; column < types.length; column++) {
+                switch (types[column]) {
+                    case Schema.KEY -> {
+                        long word1 = UNSAFE.getLong(chunk1.position);
+                        long word2 = UNSAFE.getLong(chunk1.position + 8);
+                        long word3 = UNSAFE.getLong(chunk2.position);
+                        long word4 = UNSAFE.getLong(chunk2.position + 8);
+                        long word5 = UNSAFE.getLong(chunk3.position);
+                        long word6 = UNSAFE.getLong(chunk3.position + 8);
+                        long word7 = UNSAFE.getLong(chunk4.position);
+                        long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+                        pointer1 = find(aggregates, chunk1, word1, word2);
+                        pointer2 = find(aggregates, chunk2, word3, word4);
+                        pointer3 = find(aggregates, chunk3, word5, word6);
+                        pointer4 = find(aggregates, chunk4, word7, word8);
+                    }
+                    case Schema.DECIMAL -> {
+                        values1[column] = value(chunk1);
+                        values2[column] = value(chunk2);
+                        values3[column] = value(chunk3);
+                        values4[column] = value(chunk4);
+                    }
+                    case Schema.INT -> {
+                        values1[column] = integer(chunk1);
+                        values2[column] = integer(chunk2);
+                        values3[column] = integer(chunk3);
+                        values4[column] = integer(chunk4);
+                    }
+                    default -> {
+                        skip(chunk1);
+                        skip(chunk2);
+                        skip(chunk3);
+                        skip(chunk4);
+                    }
+                }
+            }
+
+            aggregates.update(pointer1, schema, values1);
+            aggregates.update(pointer2, schema, values2);
+            aggregates.update(pointer3, schema, values3);
+            aggregates.update(pointer4, schema, values4);
+        }
+
+        loop(aggregates, schema, values1, chunk1);
+        loop(aggregates, schema, values1, chunk2);
+        loop(aggregates, schema, values1, chunk3);
+        loop(aggregates, schema, values1, chunk4);
+    }
+
+    static void loop(Aggregates aggregates, Schema schema, long[] values, Chunk chunk) {
+        byte[] types = schema.types;
+
+        while (chunk.has()) {
+            long pointer = 0;
+
+            for (int column = 0; column < types.length; column++) {
+                switch (types[column]) {
+                    case Schema.KEY -> {
+                        long word1 = UNSAFE.getLong(chunk.position);
+                        long word2 = UNSAFE.getLong(chunk.position + 8);
+                        pointer = find(aggregates, chunk, word1, word2);
+                    }
+                    case Schema.DECIMAL -> values[column] = value(chunk);
+                    case Schema.INT -> values[column] = integer(chunk);
+                    default -> skip(chunk);
+                }
+            }
+
+            aggregates.update(pointer, schema, values);
+        }
+    }
+
+    static long find(Aggregates aggregates, Chunk chunk, long word1, long word2) {
+        long position = chunk.position;
+        long hash;
+
+        long comma1 = comma(word1);
+        long comma2 = comma(word2);
+
+        if ((comma1 | comma2) != 0) {
+            long mask2 = (comma1 == 0) ? -1 : 0;  // cmov
+            word1 = mask(word1, comma1);
+            word2 = mask(word2 & mask2, comma2);
+
+            hash = Aggregates.hash(word1 ^ word2);
+            chunk.position += length(comma1) + (length(comma2) & mask2) + 1;
+
+            long pointer = aggregates.pointer + hash;
+            long w1 = UNSAFE.getLong(pointer + 24);
+            long w2 = UNSAFE.getLong(pointer + 32);
+
+            // inlined find to drop 1 branch, compiler thinks that pointer can be 0 even if this condition is met
+            // ~10 ms win
+            if (word1 == w1 && word2 == w2) {
+                return pointer;
+            }
+
+            word1 = (comma1 == 0) ? word2 : word1;
+        } else {
+            chunk.position += 16;
+            hash = word1 ^ word2;
+
+            while (true) {
+                word1 = UNSAFE.getLong(chunk.position);
+                comma1 = comma(word1);
+
+                if (comma1 == 0) {
+                    chunk.position += 8;
+                    hash ^= word1;
+                    continue;
+                }
+
+                word1 = mask(word1, comma1);
+                hash = Aggregates.hash(hash ^ word1);
+                chunk.position += length(comma1) + 1;
+                break;
+            }
+        }
+
+        long length = chunk.position - position;
+        return aggregates.put(position, word1, length, hash);
+    }
+
+    static long comma(long word) {
+        long match = word ^ COMMA;
+        return (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+    }
+
+    static long mask(long word, long separator) {
+        long mask = separator ^ (separator - 1);
+        return word & mask;
+    }
+
+    static int length(long separator) {
+        return (Long.numberOfTrailingZeros(separator) >>> 3);
+    }
+
+    static long separator(long word) {
+        long match1 = word ^ COMMA;
+        long match2 = word ^ LINE;
+        long comma = (match1 - 0x0101010101010101L) & (~match1 & 0x8080808080808080L);
+        long line = (match2 - 0x0101010101010101L) & (~match2 & 0x8080808080808080L);
+        return comma | line; // the lowest bit is exact, the higher ones can be false positives
+    }
+
+    static void skip(Chunk chunk) {
+        while (true) {
+            long separator = separator(UNSAFE.getLong(chunk.position));
+
+            if (separator == 0) {
+                chunk.position += 8;
+                continue;
+            }
+
+            chunk.position += length(separator) + 1;
+            return;
+        }
+    }
+
+    // optional '-' and 1 to 15 digits followed by ';' or '\n'
+    static long integer(Chunk chunk) {
+        long signed = (UNSAFE.getByte(chunk.position) == '-') ? -1 : 0; // cmov
+        chunk.position -= signed;
+
+        long word1 = UNSAFE.getLong(chunk.position);
+        long separator1 = separator(word1);
+        long abs;
+
+        if (separator1 != 0) {
+            int length = length(separator1);
+            chunk.position += length + 1;
+            abs = digits(word1 << (64 - 8 * length)); // right-aligns digits, the shifted in zeros are leading zeros
+        } else {
+            long word2 = UNSAFE.getLong(chunk.position + 8);
+            int length = length(separator(word2));
+            chunk.position += 8 + length + 1;
+            abs = digits(word1) * POWERS[length] + digits((length == 0) ? 0 : word2 << (64 - 8 * length));
+        }
+
+        return (abs ^ signed) - signed;
+    }
+
+    // 8 ascii digits, the most significant one in the lowest byte
+    static long digits(long word) {
+        word = ((word & 0x0F0F0F0F0F0F0F0FL) * (10 * 0x100 + 1)) >>> 8;
+        word = ((word & 0x00FF00FF00FF00FFL) * (100 * 0x10000 + 1)) >>> 16;
+        word = ((word & 0x0000FFFF0000FFFFL) * (10000 * 0x100000000L + 1)) >>> 32;
+        return word;
+    }
+
+    static int dot(long num) {
+        return Long.numberOfTrailingZeros(~num & DOT_BITS);
+    }
+
+    static long value(Chunk chunk) {
+        long num = UNSAFE.getLong(chunk.position);
+        long dot = dot(num);
+        long signed = (~num << 59) >> 63;
+        long mask = ~(signed & 0xFF);
+        long digits = ((num & mask) << (28 - dot)) & 0x0F000F0F00L;
+        long abs = ((digits * MAGIC_MULTIPLIER) >>> 32) & 0x3FF;
+        long value = (abs ^ signed) - signed;
+        chunk.position += (dot >> 3) + 3;
+        return value;
+    }
+
+    static class Aggregator extends Thread {
+        final AtomicReference<Aggregates> result;
+        final AtomicLong cursor;
+        final long start;
+        final long end;
+        final Schema schema;
+
+        public Aggregator(AtomicReference<Aggregates> result, AtomicLong cursor, long start, long end, Schema schema) {
+            this.result = result;
+            this.cursor = cursor;
+            this.start = start;
+            this.end = end;
+            this.schema = schema;
+        }
+
+        @Override
+        public void run() {
+            Aggregates aggregates = new Aggregates(schema);
+
+            for (long position; (position = cursor.getAndAdd(SEGMENT)) < end; ) {
+                long limit = position + Math.min(end - position, SEGMENT + 1);
+
+                if (position > start) {
+                    position = next(position);
+                }
+
+                if (schema == null) {
+                    loop(aggregates, position, limit);
+                } else {
+                    loop(aggregates, schema, position, limit);
+                }
+            }
+
+            while (!result.compareAndSet(null, aggregates)) {
+                Aggregates rights = result.getAndSet(null);
+
+                if (rights != null) {
+                    aggregates.merge(rights);
+                }
+            }
+        }
+    }
+
+    private record Aggregate(int min, int max, long sum, int cnt) {
+        @Override
+        public String toString() {
+            return (min / 10.0) + "/" + Challenge.round(sum / 10.0 / cnt) + "/" + (max / 10.0);
+        }
+    }
+
+    private record Row(byte[] types, int cnt, long[] mins, long[] maxs, long[] sums) {
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner("|");
+
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == Schema.DECIMAL) {
+                    joiner.add((mins[i] / 10.0) + "/" + Challenge.round(sums[i] / 10.0 / cnt) + "/" + (maxs[i] / 10.0));
+                } else {
+                    joiner.add(mins[i] + "/" + Challenge.round((double) sums[i] / cnt) + "/" + maxs[i]);
+                }
+            }
+
+            return joiner.toString();
+        }
+    }
+
+    /**
+     * Columns of a row, e.g. {@code key,decimal,int,skip}: exactly one key column which is not the last one,
+     * decimals in the same fixed-point form as the temperature ({@code -99.9} to {@code 99.9}), integers with up to
+     * 15 digits and columns to skip. Every decimal and int column is aggregated as min/avg/max per key.
+     */
+    static class Schema {
+        static final byte KEY = 0;
+        static final byte DECIMAL = 1;
+        static final byte INT = 2;
+        static final byte SKIP = 3;
+
+        final byte[] types;   // per column
+        final int[] metrics;  // metric columns
+
+        private Schema(byte[] types, int[] metrics) {
+            this.types = types;
+            this.metrics = metrics;
+        }
+
+        static Schema parse(String text) {
+            String[] columns = text.split(",");
+            byte[] types = new byte[columns.length];
+            int keys = 0;
+
+            for (int i = 0; i < columns.length; i++) {
+                types[i] = switch (columns[i].trim()) {
+                    case "key" -> KEY;
+                    case "decimal" -> DECIMAL;
+                    case "int" -> INT;
+                    case "skip" -> SKIP;
+                    default -> throw new IllegalArgumentException("Unknown column type: " + columns[i]);
+                };
+
+                keys += (types[i] == KEY) ? 1 : 0;
+            }
+
+            int[] metrics = IntStream.range(0, types.length)
+                    .filter(i -> types[i] == DECIMAL || types[i] == INT)
+                    .toArray();
+
+            if (keys != 1 || types[types.length - 1] == KEY || metrics.length == 0) {
+                throw new IllegalArgumentException("Schema needs one key column, not the last one, and a metric column: " + text);
+            }
+
+            return new Schema(types, metrics);
+        }
+    }
+
+    static class Aggregates {
+
+        private static final long ENTRIES = 64 * 1024;
+        private static final long SIZE = 128 * ENTRIES;
+        private static final long MASK = (ENTRIES - 1) << 7;
+
+        private final long pointer;
+        private final long metrics;  // [sum][min][max] per metric column, a row per slot
+        private final long stride;
+
+        public Aggregates(Schema schema) {
+            stride = (schema == null) ? 0 : 24L * schema.metrics.length;
+            metrics = (schema == null) ? 0 : UNSAFE.allocateMemory(ENTRIES * stride);
+
+            for (long address = metrics; address < metrics + ENTRIES * stride; address += 24) {
+                UNSAFE.putLong(address, 0);
+                UNSAFE.putLong(address + 8, Long.MAX_VALUE);
+                UNSAFE.putLong(address + 16, Long.MIN_VALUE);
+            }
+
+            long address = UNSAFE.allocateMemory(SIZE + 4096);
+            pointer = (address + 4095) & (~4095);
+
+            // from jvm sources: https://github.com/openjdk/jdk/blob/master/src/hotspot/share/utilities/copy.cpp#L213
+            // it tries to set memory atomically with long if the address is aligned by 8
+            // workaround to call memset
+            UNSAFE.putByte(pointer, (byte) 0);
+            UNSAFE.setMemory(pointer + 1, SIZE - 1, (byte) 0); // ~2 ms win
+        }
+
+        static long hash(long x) {
+            long h = x * -7046029254386353131L;
+            h ^= h >>> 35;
+            return h & MASK;
+        }
+
+        long find(long word1, long word2, long hash) {
+            long address = pointer + hash;
+            long w1 = UNSAFE.getLong(address + 24);
+            long w2 = UNSAFE.getLong(address + 32);
+            return (word1 == w1) && (word2 == w2) ? address : 0;
+        }
+
+        long put(long reference, long word, long length, long hash) {
+            for (long offset = hash; ; offset = next(offset)) {
+                long address = pointer + offset;
+                if (equal(address + 24, reference, word, length)) {
+                    return address;
+                }
+
+                int len = UNSAFE.getInt(address);
+                if (len == 0) {
+                    alloc(address, reference, length, hash);
+                    return address;
+                }
+            }
+        }
+
+        static void update(long address, long value) {
+            long sum = UNSAFE.getLong(address + 8) + value;
+            int cnt = UNSAFE.getInt(address + 16) + 1;
+            short min = UNSAFE.getShort(address + 20);
+            short max = UNSAFE.getShort(address + 22);
+
+            UNSAFE.putLong(address + 8, sum);
+            UNSAFE.putInt(address + 16, cnt);
+
+            if (value < min) {
+                UNSAFE.putShort(address + 20, (short) value);
+            }
+
+            if (value > max) {
+                UNSAFE.putShort(address + 22, (short) value);
+            }
+        }
+
+        void update(long address, Schema schema, long[] values) {
+            UNSAFE.putInt(address + 16, UNSAFE.getInt(address + 16) + 1);
+            long row = metrics + ((address - pointer) >>> 7) * stride;
+
+            for (int column : schema.metrics) {
+                long value = values[column];
+                long sum = UNSAFE.getLong(row) + value;
+                long min = UNSAFE.getLong(row + 8);
+                long max = UNSAFE.getLong(row + 16);
+
+                UNSAFE.putLong(row, sum);
+
+                if (value < min) {
+                    UNSAFE.putLong(row + 8, value);
+                }
+
+                if (value > max) {
+                    UNSAFE.putLong(row + 16, value);
+                }
+
+                row += 24;
+            }
+        }
+
+        void merge(Aggregates rights) {
+            for (long rightOffset = 0; rightOffset < SIZE; rightOffset += 128) {
+                long rightAddress = rights.pointer + rightOffset;
+                int length = UNSAFE.getInt(rightAddress);
+
+                if (length == 0) {
+                    continue;
+                }
+
+                int hash = UNSAFE.getInt(rightAddress + 4);
+
+                for (long offset = hash; ; offset = next(offset)) {
+                    long address = pointer + offset;
+
+                    if (equal(address + 24, rightAddress + 24, length)) {
+                        long sum = UNSAFE.getLong(address + 8) + UNSAFE.getLong(rightAddress + 8);
+                        int cnt = UNSAFE.getInt(address + 16) + UNSAFE.getInt(rightAddress + 16);
+                        short min = (short) Math.min(UNSAFE.getShort(address + 20), UNSAFE.getShort(rightAddress + 20));
+                        short max = (short) Math.max(UNSAFE.getShort(address + 22), UNSAFE.getShort(rightAddress + 22));
+
+                        UNSAFE.putLong(address + 8, sum);
+                        UNSAFE.putInt(address + 16, cnt);
+                        UNSAFE.putShort(address + 20, min);
+                        UNSAFE.putShort(address + 22, max);
+
+                        long row = metrics + (offset >>> 7) * stride;
+                        long rightRow = rights.metrics + (rightOffset >>> 7) * stride;
+
+                        for (long end = row + stride; row < end; row += 24, rightRow += 24) {
+                            UNSAFE.putLong(row, UNSAFE.getLong(row) + UNSAFE.getLong(rightRow));
+                            UNSAFE.putLong(row + 8, Math.min(UNSAFE.getLong(row + 8), UNSAFE.getLong(rightRow + 8)));
+                            UNSAFE.putLong(row + 16, Math.max(UNSAFE.getLong(row + 16), UNSAFE.getLong(rightRow + 16)));
+                        }
+                        break;
+                    }
+
+                    int len = UNSAFE.getInt(address);
+
+                    if (len == 0) {
+                        UNSAFE.copyMemory(rightAddress, address, length + 24);
+                        UNSAFE.copyMemory(rights.metrics + (rightOffset >>> 7) * stride, metrics + (offset >>> 7) * stride, stride);
+                        break;
+                    }
+                }
+            }
+        }
+
+        Map<String, Aggregate> build() {
+            TreeMap<String, Aggregate> set = new TreeMap<>();
+
+            for (long offset = 0; offset < SIZE; offset += 128) {
+                long address = pointer + offset;
+                int length = UNSAFE.getInt(address);
+
+                if (length != 0) {
+                    byte[] array = new byte[length - 1];
+                    UNSAFE.copyMemory(null, address + 24, array, Unsafe.ARRAY_BYTE_BASE_OFFSET, array.length);
+                    String key = new String(array);
+
+                    long sum = UNSAFE.getLong(address + 8);
+                    int cnt = UNSAFE.getInt(address + 16);
+                    short min = UNSAFE.getShort(address + 20);
+                    short max = UNSAFE.getShort(address + 22);
+
+                    Aggregate aggregate = new Aggregate(min, max, sum, cnt);
+                    set.put(key, aggregate);
+                }
+            }
+
+            return set;
+        }
+
+        Map<String, Row> build(Schema schema) {
+            TreeMap<String, Row> set = new TreeMap<>();
+            byte[] types = new byte[schema.metrics.length];
+
+            for (int i = 0; i < types.length; i++) {
+                types[i] = schema.types[schema.metrics[i]];
+            }
+
+            for (long offset = 0; offset < SIZE; offset += 128) {
+                long address = pointer + offset;
+                int length = UNSAFE.getInt(address);
+
+                if (length != 0) {
+                    byte[] array = new byte[length - 1];
+                    UNSAFE.copyMemory(null, address + 24, array, Unsafe.ARRAY_BYTE_BASE_OFFSET, array.length);
+                    String key = new String(array);
+
+                    long[] sums = new long[types.length];
+                    long[] mins = new long[types.length];
+                    long[] maxs = new long[types.length];
+                    long row = metrics + (offset >>> 7) * stride;
+
+                    for (int i = 0; i < types.length; i++, row += 24) {
+                        sums[i] = UNSAFE.getLong(row);
+                        mins[i] = UNSAFE.getLong(row + 8);
+                        maxs[i] = UNSAFE.getLong(row + 16);
+                    }
+
+                    set.put(key, new Row(types, UNSAFE.getInt(address + 16), mins, maxs, sums));
+                }
+            }
+
+            return set;
+        }
+
+        static void alloc(long address, long position, long length, long hash) {
+            UNSAFE.putInt(address, (int) length);
+            UNSAFE.putInt(address + 4, (int) hash);
+            UNSAFE.putShort(address + 20, Short.MAX_VALUE);
+            UNSAFE.putShort(address + 22, Short.MIN_VALUE);
+            UNSAFE.copyMemory(position, address + 24, length);
+        }
+
+        static long next(long prev) {
+            return (prev + 128) & (SIZE - 1);
+        }
+
+        static boolean equal(long address, long position, long word, long length) {
+            while (length > 8) {
+                long left = UNSAFE.getLong(position);
+                long right = UNSAFE.getLong(address);
+
+                if (left != right) {
+                    return false;
+                }
+
+                position += 8;
+                address += 8;
+                length -= 8;
+            }
+
+            return word == UNSAFE.getLong(address);
+        }
+
+        static boolean equal(long leftAddress, long rightAddress, long length) {
+            do {
+                long left = UNSAFE.getLong(leftAddress);
+                long right = UNSAFE.getLong(rightAddress);
+
+                if (left != right) {
+                    return false;
+                }
+
+                leftAddress += 8;
+                rightAddress += 8;
+                length -= 8;
+            } while (length > 0);
+
+            return true;
+        }
+    }
+
+    static class Chunk {
+        final long limit;
+        long position;
+
+        public Chunk(long position, long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean has() {
+            return position < limit;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,938 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.akorzun.onebrc;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class Challenge_37_Utf8 implements Challenge {
+
+    private static final long SEGMENT = 2 * 1024 * 1024;   // 2 MB
+    private static final long COMMA = 0x3B3B3B3B3B3B3B3BL; // ;;;;;;;;
+    private static final long LINE = 0x0A0A0A0A0A0A0A0AL;  // /n/n/n/n/n/n/n/
+    private static final long DOT_BITS = 0x10101000;
+    private static final long MAGIC_MULTIPLIER = (100 * 0x1000000 + 10 * 0x10000 + 1);
+    private static final VectorSpecies<Byte> BV256 = ByteVector.SPECIES_256;
+    private static final int VECTOR_SIZE = BV256.vectorByteSize();
+
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final long TAIL = 256; // rows starting in the last 256 bytes are parsed from a padded copy
+
+    // per (dot byte << 1 | sign) of a value: the row with '0' for digits, what turns a byte above 9 for digits
+    // and above 0 for separators into 0x80+ and the bytes of the row, shapes like "-.5" or "123.4" never pass
+    private static final long[] SHAPES = new long[32];
+    private static final long[] LIMITS = new long[32];
+    private static final long[] ROWS = new long[32];
+
+    // error classes of a pair of bytes, a pair is invalid if the classes of both bytes share a bit
+    private static final byte TOO_SHORT = 1;       // 11______ 0_______, 11______ 11______
+    private static final byte TOO_LONG = 1 << 1;   // 0_______ 10______
+    private static final byte OVERLONG_3 = 1 << 2; // 11100000 100_____
+    private static final byte TOO_LARGE = 1 << 3;  // 11110100 1001____, 11110100 101_____, 11110101+ 10______
+    private static final byte SURROGATE = 1 << 4;  // 11101101 101_____
+    private static final byte OVERLONG_2 = 1 << 5; // 1100000_ 10______
+    private static final byte TOO_LARGE_1000 = 1 << 6; // 11110101+ 1000____
+    private static final byte OVERLONG_4 = 1 << 6; // 11110000 1000____
+    private static final byte TWO_CONTS = (byte) (1 << 7); // 10______ 10______
+    private static final byte CARRY = TOO_SHORT | TOO_LONG | TWO_CONTS;
+
+    private static final ByteVector BYTE_1_HIGH = table(
+            TOO_LONG, TOO_LONG, TOO_LONG, TOO_LONG, TOO_LONG, TOO_LONG, TOO_LONG, TOO_LONG,
+            TWO_CONTS, TWO_CONTS, TWO_CONTS, TWO_CONTS,
+            TOO_SHORT | OVERLONG_2,
+            TOO_SHORT,
+            TOO_SHORT | OVERLONG_3 | SURROGATE,
+            TOO_SHORT | TOO_LARGE | TOO_LARGE_1000 | OVERLONG_4);
+
+    private static final ByteVector BYTE_1_LOW = table(
+            CARRY | OVERLONG_3 | OVERLONG_2 | OVERLONG_4,
+            CARRY | OVERLONG_2,
+            CARRY,
+            CARRY,
+            CARRY | TOO_LARGE,
+            CARRY | TOO_LARGE | TOO_LARGE_1000,
+            CARRY | TOO_LARGE | TOO_LARGE_1000,
+            CARRY | TOO_LARGE | TOO_LARGE_1000,
+            CARRY | TOO_LARGE | TOO_LARGE_1000,
+            CARRY | TOO_LARGE | TOO_LARGE_1000,
+            CARRY | TOO_LARGE | TOO_LARGE_1000,
+            CARRY | TOO_LARGE | TOO_LARGE_1000,
+            CARRY | TOO_LARGE | TOO_LARGE_1000,
+            CARRY | TOO_LARGE | TOO_LARGE_1000 | SURROGATE,
+            CARRY | TOO_LARGE | TOO_LARGE_1000,
+            CARRY | TOO_LARGE | TOO_LARGE_1000);
+
+    private static final ByteVector BYTE_2_HIGH = table(
+            TOO_SHORT, TOO_SHORT, TOO_SHORT, TOO_SHORT, TOO_SHORT, TOO_SHORT, TOO_SHORT, TOO_SHORT,
+            TOO_LONG | OVERLONG_2 | TWO_CONTS | OVERLONG_3 | TOO_LARGE_1000 | OVERLONG_4,
+            TOO_LONG | OVERLONG_2 | TWO_CONTS | OVERLONG_3 | TOO_LARGE,
+            TOO_LONG | OVERLONG_2 | TWO_CONTS | SURROGATE | TOO_LARGE,
+            TOO_LONG | OVERLONG_2 | TWO_CONTS | SURROGATE | TOO_LARGE,
+            TOO_SHORT, TOO_SHORT, TOO_SHORT, TOO_SHORT);
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            UNSAFE = (Unsafe) unsafe.get(Unsafe.class);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+
+        Arrays.fill(LIMITS, 0x80);
+        Arrays.fill(ROWS, 0x80);
+
+        for (int dot = 1; dot <= 3; dot++) {
+            for (int sign = 0; sign <= 1; sign++) {
+                if (dot - sign < 1 || dot - sign > 2) {
+                    continue;
+                }
+
+                int shape = (dot << 1) | sign;
+                LIMITS[shape] = ROWS[shape] = 0;
+
+                for (int i = 0; i <= dot + 2; i++) {
+                    long b = (i == 0 && sign == 1) ? '-' : (i == dot) ? '.' : (i == dot + 2) ? '\n' : '0';
+                    SHAPES[shape] |= b << (i << 3);
+                    LIMITS[shape] |= ((b == '0') ? 0x76L : 0x7FL) << (i << 3);
+                    ROWS[shape] |= 0x80L << (i << 3);
+                }
+            }
+        }
+    }
+
+    // 16 entries repeated over the lanes, so selectFrom() with nibbles works as a 16 byte lookup
+    private static ByteVector table(int... entries) {
+        byte[] table = new byte[VECTOR_SIZE];
+
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (byte) entries[i % 16];
+        }
+
+        return ByteVector.fromArray(BV256, table, 0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (isSpawn(args)) {
+            spawn();
+            return;
+        }
+
+        new Challenge_37_Utf8().run(args);
+    }
+
+    static boolean isSpawn(String[] args) {
+        for (String arg : args) {
+            if ("--worker".equals(arg)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static void spawn() throws Exception {
+        ProcessHandle.Info info = ProcessHandle.current().info();
+        ArrayList<String> commands = new ArrayList<>();
+        Optional<String> command = info.command();
+        Optional<String[]> arguments = info.arguments();
+
+        command.ifPresent(commands::add);
+        arguments.ifPresent(strings -> commands.addAll(Arrays.asList(strings)));
+        commands.add("--worker");
+
+        // the worker reports the bad rows to stderr
+        new ProcessBuilder()
+                .command(commands)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start()
+                .getInputStream()
+                .transferTo(System.out);
+    }
+
+    @Override
+    public void solve(String[] args, Path file, PrintStream output) throws Exception {
+        boolean validate = false;
+        Path quarantine = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--validate":
+                    validate = true;
+                    break;
+                case "--quarantine":
+                    validate = true;
+                    quarantine = Path.of(args[i + 1]);
+                    break;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel rejects = (quarantine == null) ? null : FileChannel.open(quarantine,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.global());
+            long start = segment.address();
+            long end = segment.address() + segment.byteSize();
+            long body = validate ? body(start, end) : end;
+
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            Aggregator[] aggregators = new Aggregator[parallelism];
+
+            AtomicReference<Aggregates> result = new AtomicReference<>();
+            AtomicLong cursor = new AtomicLong(start);
+
+            for (int i = 0; i < parallelism; i++) {
+                aggregators[i] = new Aggregator(result, cursor, start, body, validate, rejects);
+                aggregators[i].start();
+            }
+
+            for (Aggregator aggregator : aggregators) {
+                aggregator.join();
+            }
+
+            Aggregates aggregates = result.get();
+
+            if (validate) {
+                Aggregates tail = new Aggregates(true, rejects);
+                tail(tail, body, end);
+                tail.flush();
+                aggregates.merge(tail);
+
+                System.err.println("Bad rows: " + aggregates.bad);
+            }
+
+            output.println(aggregates.build());
+            output.close();
+        }
+    }
+
+    static long next(long position) {
+        while (true) {
+            long word = UNSAFE.getLong(position);
+            long match = word ^ LINE;
+            long line = (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+
+            if (line == 0) {
+                position += 8;
+                continue;
+            }
+
+            return position + (Long.numberOfTrailingZeros(line) >>> 3) + 1;
+        }
+    }
+
+    static void loop(Aggregates aggregates, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit); // ~20ms win
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+            long word3 = UNSAFE.getLong(chunk2.position);
+            long word4 = UNSAFE.getLong(chunk2.position + 8);
+            long word5 = UNSAFE.getLong(chunk3.position);
+            long word6 = UNSAFE.getLong(chunk3.position + 8);
+            long word7 = UNSAFE.getLong(chunk4.position);
+            long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer1 = find(aggregates, chunk1, word1, word2);
+            long pointer2 = find(aggregates, chunk2, word3, word4);
+            long pointer3 = find(aggregates, chunk3, word5, word6);
+            long pointer4 = find(aggregates, chunk4, word7, word8);
+
+            long value1 = value(chunk1);
+            long value2 = value(chunk2);
+            long value3 = value(chunk3);
+            long value4 = value(chunk4);
+
+            Aggregates.update(pointer1, value1);
+            Aggregates.update(pointer2, value2);
+            Aggregates.update(pointer3, value3);
+            Aggregates.update(pointer4, value4);
+        }
+
+        while (chunk1.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+
+            long pointer = find(aggregates, chunk1, word1, word2);
+            long value = value(chunk1);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk2.has()) {
+            long word1 = UNSAFE.getLong(chunk2.position);
+            long word2 = UNSAFE.getLong(chunk2.position + 8);
+
+            long pointer = find(aggregates, chunk2, word1, word2);
+            long value = value(chunk2);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk3.has()) {
+            long word1 = UNSAFE.getLong(chunk3.position);
+            long word2 = UNSAFE.getLong(chunk3.position + 8);
+
+            long pointer = find(aggregates, chunk3, word1, word2);
+            long value = value(chunk3);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk4.position);
+            long word2 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer = find(aggregates, chunk4, word1, word2);
+            long value = value(chunk4);
+
+            Aggregates.update(pointer, value);
+        }
+    }
+
+    // the start of the last rows, so the reads of up to 128 bytes from a row start before it never leave the mapping
+    static long body(long start, long end) {
+        for (long position = end - TAIL; position > start; position--) {
+            if (UNSAFE.getByte(position - 1) == '\n') {
+                return position;
+            }
+        }
+
+        return start;
+    }
+
+    static void tail(Aggregates aggregates, long start, long end) {
+        long length = end - start;
+        long pointer = UNSAFE.allocateMemory(length + 1 + TAIL);
+        UNSAFE.setMemory(pointer, length + 1 + TAIL, (byte) 0);
+        UNSAFE.copyMemory(start, pointer, length);
+
+        if (length > 0 && UNSAFE.getByte(pointer + length - 1) != '\n') {
+            UNSAFE.putByte(pointer + length++, (byte) '\n');
+        }
+
+        loop(aggregates, new Chunk(pointer, pointer + length));
+        UNSAFE.freeMemory(pointer);
+    }
+
+    static void check(Aggregates aggregates, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit);
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            long row1 = chunk1.position;
+            long row2 = chunk2.position;
+            long row3 = chunk3.position;
+            long row4 = chunk4.position;
+
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+            long word3 = UNSAFE.getLong(chunk2.position);
+            long word4 = UNSAFE.getLong(chunk2.position + 8);
+            long word5 = UNSAFE.getLong(chunk3.position);
+            long word6 = UNSAFE.getLong(chunk3.position + 8);
+            long word7 = UNSAFE.getLong(chunk4.position);
+            long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer1 = check(aggregates, chunk1, word1, word2);
+            long pointer2 = check(aggregates, chunk2, word3, word4);
+            long pointer3 = check(aggregates, chunk3, word5, word6);
+            long pointer4 = check(aggregates, chunk4, word7, word8);
+
+            long value1 = check(chunk1);
+            long value2 = check(chunk2);
+            long value3 = check(chunk3);
+            long value4 = check(chunk4);
+
+            aggregates.update(chunk1, row1, pointer1, value1);
+            aggregates.update(chunk2, row2, pointer2, value2);
+            aggregates.update(chunk3, row3, pointer3, value3);
+            aggregates.update(chunk4, row4, pointer4, value4);
+        }
+
+        loop(aggregates, chunk1);
+        loop(aggregates, chunk2);
+        loop(aggregates, chunk3);
+        loop(aggregates, chunk4);
+    }
+
+    static void loop(Aggregates aggregates, Chunk chunk) {
+        while (chunk.has()) {
+            long row = chunk.position;
+            long word1 = UNSAFE.getLong(chunk.position);
+            long word2 = UNSAFE.getLong(chunk.position + 8);
+
+            long pointer = check(aggregates, chunk, word1, word2);
+            long value = check(chunk);
+
+            aggregates.update(chunk, row, pointer, value);
+        }
+    }
+
+    // find() which returns 0 for a station longer than 100 bytes, reads at most 112 bytes from the row start
+    // the rest is checked only when a station is allocated, a station matching a stored one is valid
+    static long check(Aggregates aggregates, Chunk chunk, long word1, long word2) {
+        long position = chunk.position;
+        long hash;
+
+        long comma1 = comma(word1);
+        long comma2 = comma(word2);
+
+        if ((comma1 | comma2) != 0) {
+            long mask2 = (comma1 == 0) ? -1 : 0;  // cmov
+            word1 = mask(word1, comma1);
+            word2 = mask(word2 & mask2, comma2);
+
+            hash = Aggregates.hash(word1 ^ word2);
+            chunk.position += length(comma1) + (length(comma2) & mask2) + 1;
+
+            long pointer = aggregates.pointer + hash;
+            long w1 = UNSAFE.getLong(pointer + 24);
+            long w2 = UNSAFE.getLong(pointer + 32);
+
+            if (word1 == w1 && word2 == w2) {
+                return pointer;
+            }
+
+            word1 = (comma1 == 0) ? word2 : word1;
+        } else {
+            chunk.position += 16;
+            hash = word1 ^ word2;
+
+            while (true) {
+                if (chunk.position - position > 100) {
+                    return 0;
+                }
+
+                word1 = UNSAFE.getLong(chunk.position);
+                comma1 = comma(word1);
+
+                if (comma1 == 0) {
+                    chunk.position += 8;
+                    hash ^= word1;
+                    continue;
+                }
+
+                word1 = mask(word1, comma1);
+                hash = Aggregates.hash(hash ^ word1);
+                chunk.position += length(comma1) + 1;
+                break;
+            }
+        }
+
+        long length = chunk.position - position;
+        return aggregates.put(position, word1, length, hash);
+    }
+
+    // value() which returns INVALID unless the rest of the row is -?\d{1,2}\.\d\n
+    static long check(Chunk chunk) {
+        long num = UNSAFE.getLong(chunk.position);
+        long dot = dot(num);
+        long signed = (~num << 59) >> 63;
+        long mask = ~(signed & 0xFF);
+        long digits = ((num & mask) << (28 - dot)) & 0x0F000F0F00L;
+        long abs = ((digits * MAGIC_MULTIPLIER) >>> 32) & 0x3FF;
+        long value = (abs ^ signed) - signed;
+        chunk.position += (dot >> 3) + 3;
+
+        int shape = (int) (((dot >>> 3) << 1) - signed) & 31;
+        long bytes = num ^ SHAPES[shape]; // 0-9 for digits, 0 for separators if the row is valid
+        long invalid = (((bytes & 0x7F7F7F7F7F7F7F7FL) + LIMITS[shape]) | bytes) & ROWS[shape];
+        return (invalid == 0) ? value : INVALID; // cmov
+    }
+
+    static long find(Aggregates aggregates, Chunk chunk, long word1, long word2) {
+        long position = chunk.position;
+        long hash;
+
+        long comma1 = comma(word1);
+        long comma2 = comma(word2);
+
+        if ((comma1 | comma2) != 0) {
+            long mask2 = (comma1 == 0) ? -1 : 0;  // cmov
+            word1 = mask(word1, comma1);
+            word2 = mask(word2 & mask2, comma2);
+
+            hash = Aggregates.hash(word1 ^ word2);
+            chunk.position += length(comma1) + (length(comma2) & mask2) + 1;
+
+            long pointer = aggregates.pointer + hash;
+            long w1 = UNSAFE.getLong(pointer + 24);
+            long w2 = UNSAFE.getLong(pointer + 32);
+
+            // inlined find to drop 1 branch, compiler thinks that pointer can be 0 even if this condition is met
+            // ~10 ms win
+            if (word1 == w1 && word2 == w2) {
+                return pointer;
+            }
+
+            word1 = (comma1 == 0) ? word2 : word1;
+        } else {
+            chunk.position += 16;
+            hash = word1 ^ word2;
+
+            while (true) {
+                word1 = UNSAFE.getLong(chunk.position);
+                comma1 = comma(word1);
+
+                if (comma1 == 0) {
+                    chunk.position += 8;
+                    hash ^= word1;
+                    continue;
+                }
+
+                word1 = mask(word1, comma1);
+                hash = Aggregates.hash(hash ^ word1);
+                chunk.position += length(comma1) + 1;
+                break;
+            }
+        }
+
+        long length = chunk.position - position;
+        return aggregates.put(position, word1, length, hash);
+    }
+
+    static long comma(long word) {
+        long match = word ^ COMMA;
+        return (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+    }
+
+    static long mask(long word, long separator) {
+        long mask = separator ^ (separator - 1);
+        return word & mask;
+    }
+
+    static int length(long separator) {
+        return (Long.numberOfTrailingZeros(separator) >>> 3);
+    }
+
+    static int dot(long num) {
+        return Long.numberOfTrailingZeros(~num & DOT_BITS);
+    }
+
+    static long value(Chunk chunk) {
+        long num = UNSAFE.getLong(chunk.position);
+        long dot = dot(num);
+        long signed = (~num << 59) >> 63;
+        long mask = ~(signed & 0xFF);
+        long digits = ((num & mask) << (28 - dot)) & 0x0F000F0F00L;
+        long abs = ((digits * MAGIC_MULTIPLIER) >>> 32) & 0x3FF;
+        long value = (abs ^ signed) - signed;
+        chunk.position += (dot >> 3) + 3;
+        return value;
+    }
+
+    static class Aggregator extends Thread {
+        final AtomicReference<Aggregates> result;
+        final AtomicLong cursor;
+        final long start;
+        final long end;
+        final boolean validate;
+        final FileChannel quarantine;
+
+        public Aggregator(AtomicReference<Aggregates> result, AtomicLong cursor, long start, long end,
+                          boolean validate, FileChannel quarantine) {
+            this.result = result;
+            this.cursor = cursor;
+            this.start = start;
+            this.end = end;
+            this.validate = validate;
+            this.quarantine = quarantine;
+        }
+
+        @Override
+        public void run() {
+            Aggregates aggregates = new Aggregates(validate, quarantine);
+
+            for (long position; (position = cursor.getAndAdd(SEGMENT)) < end; ) {
+                long limit = position + Math.min(end - position, SEGMENT + 1);
+
+                if (position > start) {
+                    position = next(position);
+                }
+
+                if (validate) {
+                    check(aggregates, position, limit);
+                } else {
+                    loop(aggregates, position, limit);
+                }
+            }
+
+            aggregates.flush();
+
+            while (!result.compareAndSet(null, aggregates)) {
+                Aggregates rights = result.getAndSet(null);
+
+                if (rights != null) {
+                    aggregates.merge(rights);
+                }
+            }
+        }
+    }
+
+    private record Aggregate(int min, int max, long sum, int cnt) {
+        @Override
+        public String toString() {
+            return (min / 10.0) + "/" + Challenge.round(sum / 10.0 / cnt) + "/" + (max / 10.0);
+        }
+    }
+
+    static class Aggregates {
+
+        private static final long ENTRIES = 64 * 1024;
+        private static final long SIZE = 128 * ENTRIES;
+        private static final long MASK = (ENTRIES - 1) << 7;
+
+        private final long pointer;
+        private final boolean validate;
+        private final Quarantine quarantine;
+        private final byte[] buffer = new byte[128 + VECTOR_SIZE];
+        private long bad;
+
+        public Aggregates(boolean validate, FileChannel quarantine) {
+            this.validate = validate;
+            this.quarantine = (quarantine == null) ? null : new Quarantine(quarantine);
+
+            long address = UNSAFE.allocateMemory(SIZE + 4096);
+            pointer = (address + 4095) & (~4095);
+
+            // from jvm sources: https://github.com/openjdk/jdk/blob/master/src/hotspot/share/utilities/copy.cpp#L213
+            // it tries to set memory atomically with long if the address is aligned by 8
+            // workaround to call memset
+            UNSAFE.putByte(pointer, (byte) 0);
+            UNSAFE.setMemory(pointer + 1, SIZE - 1, (byte) 0); // ~2 ms win
+        }
+
+        static long hash(long x) {
+            long h = x * -7046029254386353131L;
+            h ^= h >>> 35;
+            return h & MASK;
+        }
+
+        long find(long word1, long word2, long hash) {
+            long address = pointer + hash;
+            long w1 = UNSAFE.getLong(address + 24);
+            long w2 = UNSAFE.getLong(address + 32);
+            return (word1 == w1) && (word2 == w2) ? address : 0;
+        }
+
+        long put(long reference, long word, long length, long hash) {
+            for (long offset = hash; ; offset = next(offset)) {
+                long address = pointer + offset;
+                if (equal(address + 24, reference, word, length)) {
+                    return address;
+                }
+
+                int len = UNSAFE.getInt(address);
+                if (len == 0) {
+                    if (validate && !valid(reference, length - 1)) {
+                        return 0;
+                    }
+
+                    alloc(address, reference, length, hash);
+                    return address;
+                }
+            }
+        }
+
+        static void update(long address, long value) {
+            long sum = UNSAFE.getLong(address + 8) + value;
+            int cnt = UNSAFE.getInt(address + 16) + 1;
+            short min = UNSAFE.getShort(address + 20);
+            short max = UNSAFE.getShort(address + 22);
+
+            UNSAFE.putLong(address + 8, sum);
+            UNSAFE.putInt(address + 16, cnt);
+
+            if (value < min) {
+                UNSAFE.putShort(address + 20, (short) value);
+            }
+
+            if (value > max) {
+                UNSAFE.putShort(address + 22, (short) value);
+            }
+        }
+
+        void update(Chunk chunk, long row, long pointer, long value) {
+            if (pointer != 0 && value != INVALID) {
+                update(pointer, value);
+            } else {
+                reject(chunk, row);
+            }
+        }
+
+        void reject(Chunk chunk, long row) {
+            chunk.position = Challenge_37_Utf8.next(row);
+            bad++;
+
+            if (quarantine != null) {
+                quarantine.write(row, chunk.position - row);
+            }
+        }
+
+        void flush() {
+            if (quarantine != null) {
+                quarantine.flush();
+            }
+        }
+
+        void merge(Aggregates rights) {
+            bad += rights.bad;
+
+            for (long rightOffset = 0; rightOffset < SIZE; rightOffset += 128) {
+                long rightAddress = rights.pointer + rightOffset;
+                int length = UNSAFE.getInt(rightAddress);
+
+                if (length == 0) {
+                    continue;
+                }
+
+                int hash = UNSAFE.getInt(rightAddress + 4);
+
+                for (long offset = hash; ; offset = next(offset)) {
+                    long address = pointer + offset;
+
+                    if (equal(address + 24, rightAddress + 24, length)) {
+                        long sum = UNSAFE.getLong(address + 8) + UNSAFE.getLong(rightAddress + 8);
+                        int cnt = UNSAFE.getInt(address + 16) + UNSAFE.getInt(rightAddress + 16);
+                        short min = (short) Math.min(UNSAFE.getShort(address + 20), UNSAFE.getShort(rightAddress + 20));
+                        short max = (short) Math.max(UNSAFE.getShort(address + 22), UNSAFE.getShort(rightAddress + 22));
+
+                        UNSAFE.putLong(address + 8, sum);
+                        UNSAFE.putInt(address + 16, cnt);
+                        UNSAFE.putShort(address + 20, min);
+                        UNSAFE.putShort(address + 22, max);
+                        break;
+                    }
+
+                    int len = UNSAFE.getInt(address);
+
+                    if (len == 0) {
+                        UNSAFE.copyMemory(rightAddress, address, length + 24);
+                        break;
+                    }
+                }
+            }
+        }
+
+        Map<String, Aggregate> build() {
+            TreeMap<String, Aggregate> set = new TreeMap<>();
+
+            for (long offset = 0; offset < SIZE; offset += 128) {
+                long address = pointer + offset;
+                int length = UNSAFE.getInt(address);
+
+                if (length != 0 && UNSAFE.getInt(address + 16) != 0) { // stations of bad rows only
+                    byte[] array = new byte[length - 1];
+                    UNSAFE.copyMemory(null, address + 24, array, Unsafe.ARRAY_BYTE_BASE_OFFSET, array.length);
+                    String key = new String(array);
+
+                    long sum = UNSAFE.getLong(address + 8);
+                    int cnt = UNSAFE.getInt(address + 16);
+                    short min = UNSAFE.getShort(address + 20);
+                    short max = UNSAFE.getShort(address + 22);
+
+                    Aggregate aggregate = new Aggregate(min, max, sum, cnt);
+                    set.put(key, aggregate);
+                }
+            }
+
+            return set;
+        }
+
+        // 1 to 100 bytes of UTF-8 without '\n', the lookup algorithm of "Validating UTF-8 In Less Than One Instruction
+        // Per Byte" by John Keiser and Daniel Lemire, the key is copied into a zero padded buffer, so the blocks past
+        // the key are ASCII and the last one catches a sequence which is cut by the end of the key
+        boolean valid(long address, long length) {
+            if (length < 1 || length > 100) {
+                return false;
+            }
+
+            UNSAFE.copyMemory(null, address, buffer, Unsafe.ARRAY_BYTE_BASE_OFFSET, length);
+            Arrays.fill(buffer, (int) length, buffer.length, (byte) 0);
+
+            ByteVector previous = ByteVector.zero(BV256);
+            ByteVector error = ByteVector.zero(BV256);
+
+            for (int offset = 0; offset < length + VECTOR_SIZE; offset += VECTOR_SIZE) {
+                ByteVector input = ByteVector.fromArray(BV256, buffer, offset);
+                ByteVector prev1 = previous.slice(VECTOR_SIZE - 1, input);
+                ByteVector prev2 = previous.slice(VECTOR_SIZE - 2, input);
+                ByteVector prev3 = previous.slice(VECTOR_SIZE - 3, input);
+
+                // the first byte of a pair by its high and low nibbles and the second one by its high nibble
+                ByteVector byte1High = prev1.lanewise(VectorOperators.LSHR, 4).selectFrom(BYTE_1_HIGH);
+                ByteVector byte1Low = prev1.and((byte) 0x0F).selectFrom(BYTE_1_LOW);
+                ByteVector byte2High = input.lanewise(VectorOperators.LSHR, 4).selectFrom(BYTE_2_HIGH);
+                ByteVector special = byte1High.and(byte1Low).and(byte2High);
+
+                // the third and the fourth bytes of a sequence must be continuations, the only allowed two conts
+                VectorMask<Byte> must23 = prev2.compare(VectorOperators.UNSIGNED_GE, (byte) 0xE0)
+                        .or(prev3.compare(VectorOperators.UNSIGNED_GE, (byte) 0xF0));
+                ByteVector must23x80 = ByteVector.zero(BV256).blend((byte) 0x80, must23);
+
+                error = error.or(special.lanewise(VectorOperators.XOR, must23x80));
+                error = error.or(ByteVector.zero(BV256).blend((byte) 1, input.eq((byte) '\n')));
+                previous = input;
+            }
+
+            return !error.compare(VectorOperators.NE, (byte) 0).anyTrue();
+        }
+
+        static void alloc(long address, long position, long length, long hash) {
+            UNSAFE.putInt(address, (int) length);
+            UNSAFE.putInt(address + 4, (int) hash);
+            UNSAFE.putShort(address + 20, Short.MAX_VALUE);
+            UNSAFE.putShort(address + 22, Short.MIN_VALUE);
+            UNSAFE.copyMemory(position, address + 24, length);
+        }
+
+        static long next(long prev) {
+            return (prev + 128) & (SIZE - 1);
+        }
+
+        static boolean equal(long address, long position, long word, long length) {
+            while (length > 8) {
+                long left = UNSAFE.getLong(position);
+                long right = UNSAFE.getLong(address);
+
+                if (left != right) {
+                    return false;
+                }
+
+                position += 8;
+                address += 8;
+                length -= 8;
+            }
+
+            return word == UNSAFE.getLong(address);
+        }
+
+        static boolean equal(long leftAddress, long rightAddress, long length) {
+            do {
+                long left = UNSAFE.getLong(leftAddress);
+                long right = UNSAFE.getLong(rightAddress);
+
+                if (left != right) {
+                    return false;
+                }
+
+                leftAddress += 8;
+                rightAddress += 8;
+                length -= 8;
+            } while (length > 0);
+
+            return true;
+        }
+    }
+
+    // the malformed rows of a thread, copied to an off-heap buffer which is appended to the shared file when full
+    // a buffer holds whole rows and the channel serializes the writes, so the rows of the threads never interleave
+    static class Quarantine {
+
+        private static final int CAPACITY = 64 * 1024;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(CAPACITY);
+        private final long address = MemorySegment.ofBuffer(buffer).address();
+
+        public Quarantine(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(long position, long length) {
+            if (length > buffer.remaining()) {
+                flush();
+            }
+
+            if (length > CAPACITY) {
+                write(MemorySegment.ofAddress(position).reinterpret(length).asByteBuffer());
+                return;
+            }
+
+            UNSAFE.copyMemory(position, address + buffer.position(), length);
+            buffer.position(buffer.position() + (int) length);
+        }
+
+        void flush() {
+            write(buffer.flip());
+            buffer.clear();
+        }
+
+        private void write(ByteBuffer rows) {
+            try {
+                while (rows.hasRemaining()) {
+                    channel.write(rows);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    static class Chunk {
+        final long limit;
+        long position;
+
+        public Chunk(long position, long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean has() {
+            return position < limit;
+        }
+    }
+}
\ No newline at end of file
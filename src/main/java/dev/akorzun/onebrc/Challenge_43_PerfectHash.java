@@ -0,0 +1,740 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.akorzun.onebrc;
+
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class Challenge_43_PerfectHash implements Challenge {
+
+    private static final long SEGMENT = 2 * 1024 * 1024;   // 2 MB
+    private static final long COMMA = 0x3B3B3B3B3B3B3B3BL; // ;;;;;;;;
+    private static final long LINE = 0x0A0A0A0A0A0A0A0AL;  // /n/n/n/n/n/n/n/
+    private static final long DOT_BITS = 0x10101000;
+    private static final long MAGIC_MULTIPLIER = (100 * 0x1000000 + 10 * 0x10000 + 1);
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            UNSAFE = (Unsafe) unsafe.get(Unsafe.class);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (isSpawn(args)) {
+            spawn();
+            return;
+        }
+
+        new Challenge_43_PerfectHash().run(args);
+    }
+
+    static boolean isSpawn(String[] args) {
+        for (String arg : args) {
+            if ("--worker".equals(arg)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static void spawn() throws Exception {
+        ProcessHandle.Info info = ProcessHandle.current().info();
+        ArrayList<String> commands = new ArrayList<>();
+        Optional<String> command = info.command();
+        Optional<String[]> arguments = info.arguments();
+
+        command.ifPresent(commands::add);
+        arguments.ifPresent(strings -> commands.addAll(Arrays.asList(strings)));
+        commands.add("--worker");
+
+        new ProcessBuilder()
+                .command(commands)
+                .start()
+                .getInputStream()
+                .transferTo(System.out);
+    }
+
+    @Override
+    public void solve(String[] args, Path file, PrintStream output) throws Exception {
+        List<byte[]> dictionary = List.of();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--dictionary":
+                    dictionary = dictionary(Path.of(args[i + 1]));
+                    break;
+            }
+        }
+
+        Perfect perfect = Perfect.build(dictionary);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.global());
+            long start = segment.address();
+            long end = segment.address() + segment.byteSize();
+
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            Aggregator[] aggregators = new Aggregator[parallelism];
+
+            AtomicReference<Aggregates> result = new AtomicReference<>();
+            AtomicLong cursor = new AtomicLong(start);
+
+            for (int i = 0; i < parallelism; i++) {
+                aggregators[i] = new Aggregator(result, cursor, start, end, perfect);
+                aggregators[i].start();
+            }
+
+            for (Aggregator aggregator : aggregators) {
+                aggregator.join();
+            }
+
+            output.println(result.get().build());
+            output.close();
+        }
+    }
+
+    static long next(long position) {
+        while (true) {
+            long word = UNSAFE.getLong(position);
+            long match = word ^ LINE;
+            long line = (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+
+            if (line == 0) {
+                position += 8;
+                continue;
+            }
+
+            return position + (Long.numberOfTrailingZeros(line) >>> 3) + 1;
+        }
+    }
+
+    // one station per line, the rest after ';' is ignored, so data/weather_stations.csv works as is
+    static List<byte[]> dictionary(Path file) throws IOException {
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                int semicolon = line.indexOf(';');
+                names.add((semicolon < 0) ? line : line.substring(0, semicolon));
+            }
+        }
+
+        return names.stream()
+                .map(name -> (name + ";").getBytes(StandardCharsets.UTF_8))
+                .filter(key -> key.length <= 101)
+                .toList();
+    }
+
+    static void loop(Aggregates aggregates, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit); // ~20ms win
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+            long word3 = UNSAFE.getLong(chunk2.position);
+            long word4 = UNSAFE.getLong(chunk2.position + 8);
+            long word5 = UNSAFE.getLong(chunk3.position);
+            long word6 = UNSAFE.getLong(chunk3.position + 8);
+            long word7 = UNSAFE.getLong(chunk4.position);
+            long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer1 = find(aggregates, chunk1, word1, word2);
+            long pointer2 = find(aggregates, chunk2, word3, word4);
+            long pointer3 = find(aggregates, chunk3, word5, word6);
+            long pointer4 = find(aggregates, chunk4, word7, word8);
+
+            long value1 = value(chunk1);
+            long value2 = value(chunk2);
+            long value3 = value(chunk3);
+            long value4 = value(chunk4);
+
+            Aggregates.update(pointer1, value1);
+            Aggregates.update(pointer2, value2);
+            Aggregates.update(pointer3, value3);
+            Aggregates.update(pointer4, value4);
+        }
+
+        while (chunk1.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+
+            long pointer = find(aggregates, chunk1, word1, word2);
+            long value = value(chunk1);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk2.has()) {
+            long word1 = UNSAFE.getLong(chunk2.position);
+            long word2 = UNSAFE.getLong(chunk2.position + 8);
+
+            long pointer = find(aggregates, chunk2, word1, word2);
+            long value = value(chunk2);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk3.has()) {
+            long word1 = UNSAFE.getLong(chunk3.position);
+            long word2 = UNSAFE.getLong(chunk3.position + 8);
+
+            long pointer = find(aggregates, chunk3, word1, word2);
+            long value = value(chunk3);
+
+            Aggregates.update(pointer, value);
+        }
+
+        while (chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk4.position);
+            long word2 = UNSAFE.getLong(chunk4.position + 8);
+
+            long pointer = find(aggregates, chunk4, word1, word2);
+            long value = value(chunk4);
+
+            Aggregates.update(pointer, value);
+        }
+    }
+
+    static long find(Aggregates aggregates, Chunk chunk, long word1, long word2) {
+        long position = chunk.position;
+        long hash;
+
+        long comma1 = comma(word1);
+        long comma2 = comma(word2);
+
+        if ((comma1 | comma2) != 0) {
+            long mask2 = (comma1 == 0) ? -1 : 0;  // cmov
+            word1 = mask(word1, comma1);
+            word2 = mask(word2 & mask2, comma2);
+
+            hash = Perfect.finish(Perfect.mix(Perfect.mix(0, word1), word2));
+            chunk.position += length(comma1) + (length(comma2) & mask2) + 1;
+
+            // the only slot a station of the dictionary can be in, no probing
+            long pointer = aggregates.direct + aggregates.perfect.slot(hash);
+            long w1 = UNSAFE.getLong(pointer + 24);
+            long w2 = UNSAFE.getLong(pointer + 32);
+
+            if (word1 == w1 && word2 == w2) {
+                return pointer;
+            }
+
+            word1 = (comma1 == 0) ? word2 : word1;
+        } else {
+            chunk.position += 16;
+            hash = Perfect.mix(Perfect.mix(0, word1), word2);
+
+            while (true) {
+                word1 = UNSAFE.getLong(chunk.position);
+                comma1 = comma(word1);
+
+                if (comma1 == 0) {
+                    chunk.position += 8;
+                    hash = Perfect.mix(hash, word1);
+                    continue;
+                }
+
+                word1 = mask(word1, comma1);
+                hash = Perfect.finish(Perfect.mix(hash, word1));
+                chunk.position += length(comma1) + 1;
+                break;
+            }
+
+            long pointer = aggregates.direct + aggregates.perfect.slot(hash);
+
+            if (Aggregates.equal(pointer + 24, position, word1, chunk.position - position)) {
+                return pointer;
+            }
+        }
+
+        long length = chunk.position - position;
+        return aggregates.put(position, word1, length, hash & Aggregates.MASK);
+    }
+
+    static long comma(long word) {
+        long match = word ^ COMMA;
+        return (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+    }
+
+    static long mask(long word, long separator) {
+        long mask = separator ^ (separator - 1);
+        return word & mask;
+    }
+
+    static int length(long separator) {
+        return (Long.numberOfTrailingZeros(separator) >>> 3);
+    }
+
+    static int dot(long num) {
+        return Long.numberOfTrailingZeros(~num & DOT_BITS);
+    }
+
+    static long value(Chunk chunk) {
+        long num = UNSAFE.getLong(chunk.position);
+        long dot = dot(num);
+        long signed = (~num << 59) >> 63;
+        long mask = ~(signed & 0xFF);
+        long digits = ((num & mask) << (28 - dot)) & 0x0F000F0F00L;
+        long abs = ((digits * MAGIC_MULTIPLIER) >>> 32) & 0x3FF;
+        long value = (abs ^ signed) - signed;
+        chunk.position += (dot >> 3) + 3;
+        return value;
+    }
+
+    static class Aggregator extends Thread {
+        final AtomicReference<Aggregates> result;
+        final AtomicLong cursor;
+        final long start;
+        final long end;
+        final Perfect perfect;
+
+        public Aggregator(AtomicReference<Aggregates> result, AtomicLong cursor, long start, long end, Perfect perfect) {
+            this.result = result;
+            this.cursor = cursor;
+            this.start = start;
+            this.end = end;
+            this.perfect = perfect;
+        }
+
+        @Override
+        public void run() {
+            Aggregates aggregates = new Aggregates(perfect);
+
+            for (long position; (position = cursor.getAndAdd(SEGMENT)) < end; ) {
+                long limit = position + Math.min(end - position, SEGMENT + 1);
+
+                if (position > start) {
+                    position = next(position);
+                }
+
+                loop(aggregates, position, limit);
+            }
+
+            while (!result.compareAndSet(null, aggregates)) {
+                Aggregates rights = result.getAndSet(null);
+
+                if (rights != null) {
+                    aggregates.merge(rights);
+                }
+            }
+        }
+    }
+
+    private record Aggregate(int min, int max, long sum, int cnt) {
+        @Override
+        public String toString() {
+            return (min / 10.0) + "/" + Challenge.round(sum / 10.0 / cnt) + "/" + (max / 10.0);
+        }
+    }
+
+    static class Aggregates {
+
+        private static final long ENTRIES = 64 * 1024;
+        private static final long SIZE = 128 * ENTRIES;
+        private static final long MASK = (ENTRIES - 1) << 7;
+
+        private final long pointer;
+        private final Perfect perfect;
+        private final long direct; // the slots of the dictionary, indexed by the perfect hash
+
+        public Aggregates(Perfect perfect) {
+            this.perfect = perfect;
+            this.direct = UNSAFE.allocateMemory(perfect.size * 128L);
+            UNSAFE.copyMemory(perfect.template, direct, perfect.size * 128L);
+
+            long address = UNSAFE.allocateMemory(SIZE + 4096);
+            pointer = (address + 4095) & (~4095);
+
+            // from jvm sources: https://github.com/openjdk/jdk/blob/master/src/hotspot/share/utilities/copy.cpp#L213
+            // it tries to set memory atomically with long if the address is aligned by 8
+            // workaround to call memset
+            UNSAFE.putByte(pointer, (byte) 0);
+            UNSAFE.setMemory(pointer + 1, SIZE - 1, (byte) 0); // ~2 ms win
+        }
+
+        long find(long word1, long word2, long hash) {
+            long address = pointer + hash;
+            long w1 = UNSAFE.getLong(address + 24);
+            long w2 = UNSAFE.getLong(address + 32);
+            return (word1 == w1) && (word2 == w2) ? address : 0;
+        }
+
+        long put(long reference, long word, long length, long hash) {
+            for (long offset = hash; ; offset = next(offset)) {
+                long address = pointer + offset;
+                if (equal(address + 24, reference, word, length)) {
+                    return address;
+                }
+
+                int len = UNSAFE.getInt(address);
+                if (len == 0) {
+                    alloc(address, reference, length, hash);
+                    return address;
+                }
+            }
+        }
+
+        static void update(long address, long value) {
+            long sum = UNSAFE.getLong(address + 8) + value;
+            int cnt = UNSAFE.getInt(address + 16) + 1;
+            short min = UNSAFE.getShort(address + 20);
+            short max = UNSAFE.getShort(address + 22);
+
+            UNSAFE.putLong(address + 8, sum);
+            UNSAFE.putInt(address + 16, cnt);
+
+            if (value < min) {
+                UNSAFE.putShort(address + 20, (short) value);
+            }
+
+            if (value > max) {
+                UNSAFE.putShort(address + 22, (short) value);
+            }
+        }
+
+        void merge(Aggregates rights) {
+            for (long offset = 0; offset < perfect.size * 128L; offset += 128) {
+                long address = direct + offset;
+                long rightAddress = rights.direct + offset;
+
+                if (UNSAFE.getInt(rightAddress + 16) != 0) {
+                    long sum = UNSAFE.getLong(address + 8) + UNSAFE.getLong(rightAddress + 8);
+                    int cnt = UNSAFE.getInt(address + 16) + UNSAFE.getInt(rightAddress + 16);
+                    short min = (short) Math.min(UNSAFE.getShort(address + 20), UNSAFE.getShort(rightAddress + 20));
+                    short max = (short) Math.max(UNSAFE.getShort(address + 22), UNSAFE.getShort(rightAddress + 22));
+
+                    UNSAFE.putLong(address + 8, sum);
+                    UNSAFE.putInt(address + 16, cnt);
+                    UNSAFE.putShort(address + 20, min);
+                    UNSAFE.putShort(address + 22, max);
+                }
+            }
+
+            for (long rightOffset = 0; rightOffset < SIZE; rightOffset += 128) {
+                long rightAddress = rights.pointer + rightOffset;
+                int length = UNSAFE.getInt(rightAddress);
+
+                if (length == 0) {
+                    continue;
+                }
+
+                int hash = UNSAFE.getInt(rightAddress + 4);
+
+                for (long offset = hash; ; offset = next(offset)) {
+                    long address = pointer + offset;
+
+                    if (equal(address + 24, rightAddress + 24, length)) {
+                        long sum = UNSAFE.getLong(address + 8) + UNSAFE.getLong(rightAddress + 8);
+                        int cnt = UNSAFE.getInt(address + 16) + UNSAFE.getInt(rightAddress + 16);
+                        short min = (short) Math.min(UNSAFE.getShort(address + 20), UNSAFE.getShort(rightAddress + 20));
+                        short max = (short) Math.max(UNSAFE.getShort(address + 22), UNSAFE.getShort(rightAddress + 22));
+
+                        UNSAFE.putLong(address + 8, sum);
+                        UNSAFE.putInt(address + 16, cnt);
+                        UNSAFE.putShort(address + 20, min);
+                        UNSAFE.putShort(address + 22, max);
+                        break;
+                    }
+
+                    int len = UNSAFE.getInt(address);
+
+                    if (len == 0) {
+                        UNSAFE.copyMemory(rightAddress, address, length + 24);
+                        break;
+                    }
+                }
+            }
+        }
+
+        Map<String, Aggregate> build() {
+            TreeMap<String, Aggregate> set = new TreeMap<>();
+            build(set, direct, perfect.size * 128L);
+            build(set, pointer, SIZE);
+            return set;
+        }
+
+        // the direct slots hold every station of the dictionary, only the seen ones count
+        private static void build(TreeMap<String, Aggregate> set, long pointer, long size) {
+            for (long offset = 0; offset < size; offset += 128) {
+                long address = pointer + offset;
+                int length = UNSAFE.getInt(address);
+
+                if (length != 0 && UNSAFE.getInt(address + 16) != 0) {
+                    byte[] array = new byte[length - 1];
+                    UNSAFE.copyMemory(null, address + 24, array, Unsafe.ARRAY_BYTE_BASE_OFFSET, array.length);
+                    String key = new String(array);
+
+                    long sum = UNSAFE.getLong(address + 8);
+                    int cnt = UNSAFE.getInt(address + 16);
+                    short min = UNSAFE.getShort(address + 20);
+                    short max = UNSAFE.getShort(address + 22);
+
+                    Aggregate aggregate = new Aggregate(min, max, sum, cnt);
+                    set.put(key, aggregate);
+                }
+            }
+        }
+
+        static void alloc(long address, long position, long length, long hash) {
+            UNSAFE.putInt(address, (int) length);
+            UNSAFE.putInt(address + 4, (int) hash);
+            UNSAFE.putShort(address + 20, Short.MAX_VALUE);
+            UNSAFE.putShort(address + 22, Short.MIN_VALUE);
+            UNSAFE.copyMemory(position, address + 24, length);
+        }
+
+        static long next(long prev) {
+            return (prev + 128) & (SIZE - 1);
+        }
+
+        static boolean equal(long address, long position, long word, long length) {
+            while (length > 8) {
+                long left = UNSAFE.getLong(position);
+                long right = UNSAFE.getLong(address);
+
+                if (left != right) {
+                    return false;
+                }
+
+                position += 8;
+                address += 8;
+                length -= 8;
+            }
+
+            return word == UNSAFE.getLong(address);
+        }
+
+        static boolean equal(long leftAddress, long rightAddress, long length) {
+            do {
+                long left = UNSAFE.getLong(leftAddress);
+                long right = UNSAFE.getLong(rightAddress);
+
+                if (left != right) {
+                    return false;
+                }
+
+                leftAddress += 8;
+                rightAddress += 8;
+                length -= 8;
+            } while (length > 0);
+
+            return true;
+        }
+    }
+
+    /**
+     * Minimal perfect hash over the stations of a dictionary in the way of CHD: the keys are split into buckets
+     * of ~4 by the high bits of the hash, then the buckets are placed from the largest with the first seed that moves
+     * all their keys to free slots. A lookup is one displacement load and a multiply.
+     * Keys that do not fit are left to the regular table.
+     */
+    static class Perfect {
+        private static final int LAMBDA = 4;
+
+        final int size;
+        final int buckets;
+        final long displacements;
+        final long template; // the slots with the keys, copied by every Aggregates
+
+        private Perfect(int size, int buckets, long displacements, long template) {
+            this.size = size;
+            this.buckets = buckets;
+            this.displacements = displacements;
+            this.template = template;
+        }
+
+        long slot(long hash) {
+            long displacement = UNSAFE.getLong(displacements + 8L * bucket(hash, buckets));
+            return index(hash, displacement, size) << 7;
+        }
+
+        static long index(long hash, long displacement, long size) {
+            long x = (hash ^ displacement) * 0xD6E8FEB86659FD93L;
+            return ((x >>> 32) * size) >>> 32;
+        }
+
+        static long displacement(long seed) {
+            return seed * 0x9E3779B97F4A7C15L;
+        }
+
+        static long mix(long hash, long word) {
+            return hash ^ word;
+        }
+
+        static long finish(long hash) {
+            long h = hash * -7046029254386353131L;
+            return h ^ (h >>> 35);
+        }
+
+        // the station with ';' folded word by word as find() does it, at least two words
+        static long hash(byte[] key) {
+            long hash = mix(mix(0, word(key, 0)), word(key, 8));
+
+            for (int offset = 16; offset < key.length; offset += 8) {
+                hash = mix(hash, word(key, offset));
+            }
+
+            return finish(hash);
+        }
+
+        private static long word(byte[] key, int offset) {
+            long word = 0;
+
+            for (int i = Math.min(key.length, offset + 8) - 1; i >= offset; i--) {
+                word = (word << 8) | (key[i] & 0xFF);
+            }
+
+            return word;
+        }
+
+        static Perfect build(List<byte[]> keys) {
+            int size = Math.max(keys.size(), 1); // an empty slot for no dictionary, never matches
+            int buckets = Math.max(keys.size() / LAMBDA, 1);
+
+            long[] hashes = new long[keys.size()];
+            Integer[] order = new Integer[keys.size()];
+            int[] sizes = new int[buckets];
+
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = hash(keys.get(i));
+                order[i] = i;
+                sizes[bucket(hashes[i], buckets)]++;
+            }
+
+            // the largest buckets first, the keys of a bucket next to each other
+            Arrays.sort(order, (left, right) -> {
+                int leftBucket = bucket(hashes[left], buckets);
+                int rightBucket = bucket(hashes[right], buckets);
+                int compare = Integer.compare(sizes[rightBucket], sizes[leftBucket]);
+                return (compare != 0) ? compare : Integer.compare(leftBucket, rightBucket);
+            });
+
+            long displacements = UNSAFE.allocateMemory(8L * buckets);
+            long template = UNSAFE.allocateMemory(128L * size);
+            UNSAFE.setMemory(displacements, 8L * buckets, (byte) 0);
+            UNSAFE.setMemory(template, 128L * size, (byte) 0);
+
+            boolean[] taken = new boolean[size];
+            long[] slots = new long[LAMBDA * 16];
+            long attempts = 64L * size; // the last singletons need ~size attempts
+
+            for (int first = 0, last; first < order.length; first = last) {
+                int bucket = bucket(hashes[order[first]], buckets);
+                last = first + sizes[bucket];
+
+                if (last - first > slots.length) {
+                    continue; // a pathological bucket, its keys go to the regular table
+                }
+
+                for (int seed = 0; seed < attempts; seed++) {
+                    if (place(hashes, order, first, last, seed, size, taken, slots)) {
+                        UNSAFE.putLong(displacements + 8L * bucket, displacement(seed));
+
+                        for (int i = first; i < last; i++) {
+                            byte[] key = keys.get(order[i]);
+                            long address = template + (slots[i - first] << 7);
+                            UNSAFE.putInt(address, key.length);
+                            UNSAFE.putShort(address + 20, Short.MAX_VALUE);
+                            UNSAFE.putShort(address + 22, Short.MIN_VALUE);
+                            UNSAFE.copyMemory(key, Unsafe.ARRAY_BYTE_BASE_OFFSET, null, address + 24, key.length);
+                        }
+
+                        break;
+                    }
+                }
+            }
+
+            return new Perfect(size, buckets, displacements, template);
+        }
+
+        private static boolean place(long[] hashes, Integer[] order, int first, int last, int seed, int size,
+                                     boolean[] taken, long[] slots) {
+            for (int i = first; i < last; i++) {
+                long slot = index(hashes[order[i]], displacement(seed), size);
+
+                if (taken[(int) slot]) {
+                    return false;
+                }
+
+                for (int j = first; j < i; j++) {
+                    if (slots[j - first] == slot) {
+                        return false;
+                    }
+                }
+
+                slots[i - first] = slot;
+            }
+
+            for (int i = first; i < last; i++) {
+                taken[(int) slots[i - first]] = true;
+            }
+
+            return true;
+        }
+
+        private static int bucket(long hash, int buckets) {
+            return (int) (((hash >>> 32) * buckets) >>> 32);
+        }
+    }
+
+    static class Chunk {
+        final long limit;
+        long position;
+
+        public Chunk(long position, long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean has() {
+            return position < limit;
+        }
+    }
+}
\ No newline at end of file
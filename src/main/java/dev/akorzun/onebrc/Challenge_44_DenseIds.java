@@ -0,0 +1,526 @@
+/*
+ *  Copyright 2023 The original authors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package dev.akorzun.onebrc;
+
+import sun.misc.Unsafe;
+
+import java.io.PrintStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class Challenge_44_DenseIds implements Challenge {
+
+    private static final long SEGMENT = 2 * 1024 * 1024;   // 2 MB
+    private static final long COMMA = 0x3B3B3B3B3B3B3B3BL; // ;;;;;;;;
+    private static final long LINE = 0x0A0A0A0A0A0A0A0AL;  // /n/n/n/n/n/n/n/
+    private static final long DOT_BITS = 0x10101000;
+    private static final long MAGIC_MULTIPLIER = (100 * 0x1000000 + 10 * 0x10000 + 1);
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            UNSAFE = (Unsafe) unsafe.get(Unsafe.class);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (isSpawn(args)) {
+            spawn();
+            return;
+        }
+
+        new Challenge_44_DenseIds().run(args);
+    }
+
+    static boolean isSpawn(String[] args) {
+        for (String arg : args) {
+            if ("--worker".equals(arg)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static void spawn() throws Exception {
+        ProcessHandle.Info info = ProcessHandle.current().info();
+        ArrayList<String> commands = new ArrayList<>();
+        Optional<String> command = info.command();
+        Optional<String[]> arguments = info.arguments();
+
+        command.ifPresent(commands::add);
+        arguments.ifPresent(strings -> commands.addAll(Arrays.asList(strings)));
+        commands.add("--worker");
+
+        new ProcessBuilder()
+                .command(commands)
+                .start()
+                .getInputStream()
+                .transferTo(System.out);
+    }
+
+    @Override
+    public void solve(String[] args, Path file, PrintStream output) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.global());
+            long start = segment.address();
+            long end = segment.address() + segment.byteSize();
+
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            Aggregator[] aggregators = new Aggregator[parallelism];
+
+            Dictionary dictionary = new Dictionary();
+            AtomicReference<Aggregates> result = new AtomicReference<>();
+            AtomicLong cursor = new AtomicLong(start);
+
+            for (int i = 0; i < parallelism; i++) {
+                aggregators[i] = new Aggregator(dictionary, result, cursor, start, end);
+                aggregators[i].start();
+            }
+
+            for (Aggregator aggregator : aggregators) {
+                aggregator.join();
+            }
+
+            output.println(result.get().build());
+            output.close();
+        }
+    }
+
+    static long next(long position) {
+        while (true) {
+            long word = UNSAFE.getLong(position);
+            long match = word ^ LINE;
+            long line = (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+
+            if (line == 0) {
+                position += 8;
+                continue;
+            }
+
+            return position + (Long.numberOfTrailingZeros(line) >>> 3) + 1;
+        }
+    }
+
+    static void loop(Aggregates aggregates, long position, long limit) {
+        long chunk = (limit - position) / 4;
+        long mid1 = next(position + chunk);
+        long mid2 = next(position + chunk + chunk);
+        long mid3 = next(position + chunk + chunk + chunk);
+
+        Chunk chunk1 = new Chunk(position, mid1);
+        Chunk chunk2 = new Chunk(mid1, mid2);
+        Chunk chunk3 = new Chunk(mid2, mid3);
+        Chunk chunk4 = new Chunk(mid3, limit); // ~20ms win
+
+        while (chunk1.has() && chunk2.has() && chunk3.has() && chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+            long word3 = UNSAFE.getLong(chunk2.position);
+            long word4 = UNSAFE.getLong(chunk2.position + 8);
+            long word5 = UNSAFE.getLong(chunk3.position);
+            long word6 = UNSAFE.getLong(chunk3.position + 8);
+            long word7 = UNSAFE.getLong(chunk4.position);
+            long word8 = UNSAFE.getLong(chunk4.position + 8);
+
+            int id1 = find(aggregates, chunk1, word1, word2);
+            int id2 = find(aggregates, chunk2, word3, word4);
+            int id3 = find(aggregates, chunk3, word5, word6);
+            int id4 = find(aggregates, chunk4, word7, word8);
+
+            long value1 = value(chunk1);
+            long value2 = value(chunk2);
+            long value3 = value(chunk3);
+            long value4 = value(chunk4);
+
+            aggregates.update(id1, value1);
+            aggregates.update(id2, value2);
+            aggregates.update(id3, value3);
+            aggregates.update(id4, value4);
+        }
+
+        while (chunk1.has()) {
+            long word1 = UNSAFE.getLong(chunk1.position);
+            long word2 = UNSAFE.getLong(chunk1.position + 8);
+
+            int id = find(aggregates, chunk1, word1, word2);
+            long value = value(chunk1);
+
+            aggregates.update(id, value);
+        }
+
+        while (chunk2.has()) {
+            long word1 = UNSAFE.getLong(chunk2.position);
+            long word2 = UNSAFE.getLong(chunk2.position + 8);
+
+            int id = find(aggregates, chunk2, word1, word2);
+            long value = value(chunk2);
+
+            aggregates.update(id, value);
+        }
+
+        while (chunk3.has()) {
+            long word1 = UNSAFE.getLong(chunk3.position);
+            long word2 = UNSAFE.getLong(chunk3.position + 8);
+
+            int id = find(aggregates, chunk3, word1, word2);
+            long value = value(chunk3);
+
+            aggregates.update(id, value);
+        }
+
+        while (chunk4.has()) {
+            long word1 = UNSAFE.getLong(chunk4.position);
+            long word2 = UNSAFE.getLong(chunk4.position + 8);
+
+            int id = find(aggregates, chunk4, word1, word2);
+            long value = value(chunk4);
+
+            aggregates.update(id, value);
+        }
+    }
+
+    static int find(Aggregates aggregates, Chunk chunk, long word1, long word2) {
+        long position = chunk.position;
+        long hash;
+
+        long comma1 = comma(word1);
+        long comma2 = comma(word2);
+
+        if ((comma1 | comma2) != 0) {
+            long mask2 = (comma1 == 0) ? -1 : 0;  // cmov
+            word1 = mask(word1, comma1);
+            word2 = mask(word2 & mask2, comma2);
+
+            hash = Dictionary.hash(word1 ^ word2);
+            chunk.position += length(comma1) + (length(comma2) & mask2) + 1;
+
+            // the length is read first, it guards the key and the id of the slot
+            long address = aggregates.dictionary.pointer + hash;
+            int len = UNSAFE.getIntVolatile(null, address);
+            long w1 = UNSAFE.getLong(address + 8);
+            long w2 = UNSAFE.getLong(address + 16);
+
+            if (len > 0 && word1 == w1 && word2 == w2) {
+                return UNSAFE.getInt(address + 4);
+            }
+
+            word1 = (comma1 == 0) ? word2 : word1;
+        } else {
+            chunk.position += 16;
+            hash = word1 ^ word2;
+
+            while (true) {
+                word1 = UNSAFE.getLong(chunk.position);
+                comma1 = comma(word1);
+
+                if (comma1 == 0) {
+                    chunk.position += 8;
+                    hash ^= word1;
+                    continue;
+                }
+
+                word1 = mask(word1, comma1);
+                hash = Dictionary.hash(hash ^ word1);
+                chunk.position += length(comma1) + 1;
+                break;
+            }
+        }
+
+        long length = chunk.position - position;
+        return aggregates.dictionary.put(position, word1, length, hash);
+    }
+
+    static long comma(long word) {
+        long match = word ^ COMMA;
+        return (match - 0x0101010101010101L) & (~match & 0x8080808080808080L);
+    }
+
+    static long mask(long word, long separator) {
+        long mask = separator ^ (separator - 1);
+        return word & mask;
+    }
+
+    static int length(long separator) {
+        return (Long.numberOfTrailingZeros(separator) >>> 3);
+    }
+
+    static int dot(long num) {
+        return Long.numberOfTrailingZeros(~num & DOT_BITS);
+    }
+
+    static long value(Chunk chunk) {
+        long num = UNSAFE.getLong(chunk.position);
+        long dot = dot(num);
+        long signed = (~num << 59) >> 63;
+        long mask = ~(signed & 0xFF);
+        long digits = ((num & mask) << (28 - dot)) & 0x0F000F0F00L;
+        long abs = ((digits * MAGIC_MULTIPLIER) >>> 32) & 0x3FF;
+        long value = (abs ^ signed) - signed;
+        chunk.position += (dot >> 3) + 3;
+        return value;
+    }
+
+    static class Aggregator extends Thread {
+        final Dictionary dictionary;
+        final AtomicReference<Aggregates> result;
+        final AtomicLong cursor;
+        final long start;
+        final long end;
+
+        public Aggregator(Dictionary dictionary, AtomicReference<Aggregates> result, AtomicLong cursor, long start, long end) {
+            this.dictionary = dictionary;
+            this.result = result;
+            this.cursor = cursor;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            Aggregates aggregates = new Aggregates(dictionary);
+
+            for (long position; (position = cursor.getAndAdd(SEGMENT)) < end; ) {
+                long limit = position + Math.min(end - position, SEGMENT + 1);
+
+                if (position > start) {
+                    position = next(position);
+                }
+
+                loop(aggregates, position, limit);
+            }
+
+            while (!result.compareAndSet(null, aggregates)) {
+                Aggregates rights = result.getAndSet(null);
+
+                if (rights != null) {
+                    aggregates.merge(rights);
+                }
+            }
+        }
+    }
+
+    private record Aggregate(int min, int max, long sum, int cnt) {
+        @Override
+        public String toString() {
+            return (min / 10.0) + "/" + Challenge.round(sum / 10.0 / cnt) + "/" + (max / 10.0);
+        }
+    }
+
+    // one per run, shared by the threads: station -> dense id, slots are never changed after being published
+    static class Dictionary {
+
+        private static final int IDS = 64 * 1024;
+        private static final long ENTRIES = 2 * IDS; // half full at most, so probes stay short
+        private static final long SIZE = 128 * ENTRIES;
+        private static final long MASK = (ENTRIES - 1) << 7;
+
+        private final long pointer;
+        private final long addresses; // id -> slot, off-heap as the native image has a 64 MB heap
+        private final AtomicInteger size = new AtomicInteger();
+
+        public Dictionary() {
+            long address = UNSAFE.allocateMemory(SIZE + 4096);
+            pointer = (address + 4095) & (~4095);
+            addresses = UNSAFE.allocateMemory(8L * IDS);
+
+            UNSAFE.putByte(pointer, (byte) 0);
+            UNSAFE.setMemory(pointer + 1, SIZE - 1, (byte) 0);
+        }
+
+        static long hash(long x) {
+            long h = x * -7046029254386353131L;
+            h ^= h >>> 35;
+            return h & MASK;
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        // slot: length (0 - empty, -1 - being written, positive - published), id, key
+        int put(long reference, long word, long length, long hash) {
+            for (long offset = hash; ; offset = next(offset)) {
+                long address = pointer + offset;
+                int len = UNSAFE.getIntVolatile(null, address);
+
+                if (len == 0 && UNSAFE.compareAndSwapInt(null, address, 0, -1)) {
+                    int id = size.getAndIncrement();
+
+                    if (id >= IDS) {
+                        throw new IllegalStateException("More than " + IDS + " stations");
+                    }
+
+                    UNSAFE.putInt(address + 4, id);
+                    UNSAFE.copyMemory(reference, address + 8, length);
+                    UNSAFE.putLong(addresses + 8L * id, address);
+                    UNSAFE.putIntVolatile(null, address, (int) length);
+                    return id;
+                }
+
+                while ((len = UNSAFE.getIntVolatile(null, address)) < 0) {
+                    Thread.onSpinWait();
+                }
+
+                if (len == length && equal(address + 8, reference, word, length)) {
+                    return UNSAFE.getInt(address + 4);
+                }
+            }
+        }
+
+        String key(int id) {
+            long address = UNSAFE.getLong(addresses + 8L * id);
+            byte[] array = new byte[UNSAFE.getInt(address) - 1];
+            UNSAFE.copyMemory(null, address + 8, array, Unsafe.ARRAY_BYTE_BASE_OFFSET, array.length);
+            return new String(array);
+        }
+
+        static long next(long prev) {
+            return (prev + 128) & (SIZE - 1);
+        }
+
+        static boolean equal(long address, long position, long word, long length) {
+            while (length > 8) {
+                long left = UNSAFE.getLong(position);
+                long right = UNSAFE.getLong(address);
+
+                if (left != right) {
+                    return false;
+                }
+
+                position += 8;
+                address += 8;
+                length -= 8;
+            }
+
+            return word == UNSAFE.getLong(address);
+        }
+    }
+
+    // one per thread: the stats of the stations by id, 20 bytes per station instead of a 128 byte slot
+    // off-heap like the other tables, 1.25 MB per thread would not fit the 64 MB heap of the native image on many cores
+    static class Aggregates {
+
+        private final Dictionary dictionary;
+        private final long sums; // long per id
+        private final long cnts; // int per id
+        private final long mins; // int per id
+        private final long maxs; // int per id
+
+        public Aggregates(Dictionary dictionary) {
+            this.dictionary = dictionary;
+            this.sums = UNSAFE.allocateMemory(20L * Dictionary.IDS);
+            this.cnts = sums + 8L * Dictionary.IDS;
+            this.mins = cnts + 4L * Dictionary.IDS;
+            this.maxs = mins + 4L * Dictionary.IDS;
+
+            UNSAFE.setMemory(sums, 12L * Dictionary.IDS, (byte) 0);
+
+            for (long id = 0; id < Dictionary.IDS; id++) {
+                UNSAFE.putInt(mins + 4 * id, Short.MAX_VALUE);
+                UNSAFE.putInt(maxs + 4 * id, Short.MIN_VALUE);
+            }
+        }
+
+        void update(int id, long value) {
+            long sum = sums + 8L * id;
+            long cnt = cnts + 4L * id;
+            long min = mins + 4L * id;
+            long max = maxs + 4L * id;
+
+            UNSAFE.putLong(sum, UNSAFE.getLong(sum) + value);
+            UNSAFE.putInt(cnt, UNSAFE.getInt(cnt) + 1);
+
+            if (value < UNSAFE.getInt(min)) {
+                UNSAFE.putInt(min, (int) value);
+            }
+
+            if (value > UNSAFE.getInt(max)) {
+                UNSAFE.putInt(max, (int) value);
+            }
+        }
+
+        // the threads are done with the ids they have seen, so both sides fit in the current size
+        // no probing, plain loops over the arrays, one per field
+        void merge(Aggregates rights) {
+            long size = dictionary.size();
+
+            for (long id = 0; id < size; id++) {
+                UNSAFE.putLong(sums + 8 * id, UNSAFE.getLong(sums + 8 * id) + UNSAFE.getLong(rights.sums + 8 * id));
+            }
+
+            for (long id = 0; id < size; id++) {
+                UNSAFE.putInt(cnts + 4 * id, UNSAFE.getInt(cnts + 4 * id) + UNSAFE.getInt(rights.cnts + 4 * id));
+            }
+
+            for (long id = 0; id < size; id++) {
+                UNSAFE.putInt(mins + 4 * id, Math.min(UNSAFE.getInt(mins + 4 * id), UNSAFE.getInt(rights.mins + 4 * id)));
+            }
+
+            for (long id = 0; id < size; id++) {
+                UNSAFE.putInt(maxs + 4 * id, Math.max(UNSAFE.getInt(maxs + 4 * id), UNSAFE.getInt(rights.maxs + 4 * id)));
+            }
+        }
+
+        Map<String, Aggregate> build() {
+            TreeMap<String, Aggregate> set = new TreeMap<>();
+            int size = dictionary.size();
+
+            for (int id = 0; id < size; id++) {
+                int cnt = UNSAFE.getInt(cnts + 4L * id);
+
+                if (cnt != 0) {
+                    Aggregate aggregate = new Aggregate(UNSAFE.getInt(mins + 4L * id), UNSAFE.getInt(maxs + 4L * id),
+                            UNSAFE.getLong(sums + 8L * id), cnt);
+                    set.put(dictionary.key(id), aggregate);
+                }
+            }
+
+            return set;
+        }
+    }
+
+    static class Chunk {
+        final long limit;
+        long position;
+
+        public Chunk(long position, long limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean has() {
+            return position < limit;
+        }
+    }
+}
\ No newline at end of file
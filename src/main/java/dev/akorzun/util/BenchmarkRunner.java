@@ -0,0 +1,487 @@
+package dev.akorzun.util;
+
+import java.io.IOException;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs each target a few times after warmups, like eval.sh with hyperfine, and measures every run:
+ * wall time, CPU time and page faults of the reaped children from /proc/self/stat,
+ * peak RSS by sampling /proc/[pid]/status of the target and its descendants.
+ * The runner is a child subreaper, so the processes outliving the target, e.g. the worker spawned by the steps from 24 on,
+ * are reparented to it instead of init. It waits for them and reaps them, so their CPU time and page faults,
+ * and the ones of anything they reaped, end up in /proc/self/stat as well.
+ * <p>
+ * Prints the means with 95% confidence intervals and, against a baseline results file, Welch's t-test of the wall time.
+ * Exits with 1 if a target is significantly slower than its baseline, so a change can be gated on it.
+ * <p>
+ * With --perf every run is wrapped with perf stat -x, and the counters go next to the timings:
+ * IPC, branch, L1-dcache and dTLB load miss rates. The page faults then come from perf as well,
+ * which counts the descendants only until the target exits.
+ * <p>
+ * Usage: BenchmarkRunner [--warmup 3] [--runs 10] [--alpha 0.05] [--baseline file] [--output file] [--perf] target...
+ * A target is a step, e.g. Challenge_25_Bonus, run with the JVM options and the classpath of the runner,
+ * or a command, e.g. ./run-25.sh, run with sh. See benchmark.sh.
+ */
+public class BenchmarkRunner {
+
+    private static final double TICKS = 100; // USER_HZ, clock ticks per second in /proc
+    private static final long SAMPLING = 5;  // ms between the RSS samples, shorter peaks are missed
+    private static final String EVENTS = "cycles,instructions,branches,branch-misses,"
+            + "L1-dcache-loads,L1-dcache-load-misses,dTLB-loads,dTLB-load-misses,page-faults";
+
+    // counters: perf event -> value, empty without --perf
+    record Sample(double wall, double cpu, double rss, double faults, Map<String, Double> counters) {
+    }
+
+    // wall and cpu in ms, rss in MB, misses in % of the loads or branches, NaN if not counted
+    record Result(String target, int runs, double wall, double error, double cpu, double rss, double faults,
+                  double ipc, double branchMisses, double l1Misses, double tlbMisses) {
+
+        static final String HEADER = "# target\truns\twall\tstddev\tcpu\trss\tfaults\tipc\tbranch-misses\tl1-misses\ttlb-misses";
+
+        // the files written before the counters have 7 fields
+        static Result parse(String line) {
+            String[] fields = line.split("\t");
+            double[] values = new double[9];
+
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (i + 2 < fields.length) ? Double.parseDouble(fields[i + 2]) : Double.NaN;
+            }
+
+            return new Result(fields[0], Integer.parseInt(fields[1]), values[0], values[1], values[2], values[3], values[4],
+                    values[5], values[6], values[7], values[8]);
+        }
+
+        String format() {
+            return target + "\t" + runs + "\t" + wall + "\t" + error + "\t" + cpu + "\t" + rss + "\t" + faults
+                    + "\t" + ipc + "\t" + branchMisses + "\t" + l1Misses + "\t" + tlbMisses;
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        int warmup = 3;
+        int runs = 10;
+        double alpha = 0.05;
+        Path baseline = null;
+        Path output = null;
+        boolean perf = false;
+        List<String> targets = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--runs" -> runs = Integer.parseInt(args[++i]);
+                case "--alpha" -> alpha = Double.parseDouble(args[++i]);
+                case "--baseline" -> baseline = Path.of(args[++i]);
+                case "--output" -> output = Path.of(args[++i]);
+                case "--perf" -> perf = true;
+                default -> targets.add(args[i]);
+            }
+        }
+
+        if (targets.isEmpty() || runs < 2) {
+            throw new IllegalArgumentException("Usage: BenchmarkRunner [--warmup 3] [--runs 10] [--alpha 0.05] "
+                    + "[--baseline file] [--output file] [--perf] target...");
+        }
+
+        Native.subreaper();
+
+        Map<String, Result> baselines = (baseline == null) ? Map.of() : read(baseline);
+        List<Result> results = new ArrayList<>();
+        boolean regression = false;
+
+        System.out.println("| Target                   | Runs |  Wall (ms) ± 95% CI | CPU (ms) | RSS (MB) |    Faults |  IPC | Branch miss % | L1 miss % | dTLB miss % | Baseline (ms) |  Diff % |      p |");
+        System.out.println("|--------------------------|------|---------------------|----------|----------|-----------|------|---------------|-----------|-------------|---------------|---------|--------|");
+
+        for (String target : targets) {
+            List<String> command = command(target);
+
+            for (int i = 0; i < warmup; i++) {
+                run(command, perf);
+            }
+
+            List<Sample> samples = new ArrayList<>();
+            for (int i = 0; i < runs; i++) {
+                samples.add(run(command, perf));
+            }
+
+            Result result = result(target, samples);
+            results.add(result);
+
+            double interval = Statistics.quantile(1 - 0.025, runs - 1) * result.error / Math.sqrt(runs);
+            Result base = baselines.get(target);
+            String comparison = "|               |         |        |";
+
+            if (base != null) {
+                double p = Statistics.welch(result.wall, result.error, result.runs, base.wall, base.error, base.runs);
+                boolean slower = p < alpha && result.wall > base.wall;
+                regression |= slower;
+                comparison = String.format("| %13.1f | %+7.2f | %6.4f |%s", base.wall, (result.wall / base.wall - 1) * 100, p,
+                        slower ? " slower" : (p < alpha) ? " faster" : "");
+            }
+
+            System.out.printf("| %-24s | %4d | %8.1f ± %8.1f | %8.1f | %8.1f | %9.0f | %4s | %13s | %9s | %11s %s%n",
+                    target, runs, result.wall, interval, result.cpu, result.rss, result.faults,
+                    format(result.ipc), format(result.branchMisses), format(result.l1Misses), format(result.tlbMisses), comparison);
+        }
+
+        if (output != null) {
+            write(output, results);
+        }
+
+        if (regression) {
+            System.exit(1);
+        }
+    }
+
+    static List<String> command(String target) {
+        if (!target.startsWith("Challenge_")) {
+            return List.of("sh", "-c", target);
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("dev.akorzun.onebrc." + target);
+        return command;
+    }
+
+    static Sample run(List<String> command, boolean perf) throws Throwable {
+        Path counters = null;
+
+        if (perf) {
+            counters = Files.createTempFile("perf-", ".csv");
+            List<String> wrapped = new ArrayList<>(List.of("perf", "stat", "-x", ",", "-o", counters.toString(), "-e", EVENTS, "--"));
+            wrapped.addAll(command);
+            command = wrapped;
+        }
+
+        long[] before = children();
+        long start = System.nanoTime();
+
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        long rss = 0;
+
+        while (!process.waitFor(SAMPLING, TimeUnit.MILLISECONDS)) {
+            rss = Math.max(rss, rss(process.toHandle()));
+        }
+
+        long wall = System.nanoTime() - start;
+        orphans();
+        long[] after = children();
+
+        if (process.exitValue() != 0) {
+            if (counters != null) {
+                Files.delete(counters);
+            }
+
+            throw new IllegalStateException("Failed: " + command + ", exit code: " + process.exitValue());
+        }
+
+        // the target and the orphans are reaped by now, so their times and faults are added to ours
+        double cpu = (after[0] - before[0]) * 1000 / TICKS;
+        double faults = after[1] - before[1];
+        Map<String, Double> events = Map.of();
+
+        if (counters != null) {
+            events = counters(counters);
+            Files.delete(counters);
+            faults = events.getOrDefault("page-faults", Double.NaN);
+        }
+
+        return new Sample(wall / 1e6, cpu, rss / 1024.0, faults, events);
+    }
+
+    // perf stat -x, lines: value,unit,event,run time,run %,metric,metric unit; value is <not counted> or <not supported> if so
+    static Map<String, Double> counters(Path file) throws IOException {
+        Map<String, Double> counters = new LinkedHashMap<>();
+
+        for (String line : Files.readAllLines(file)) {
+            String[] fields = line.split(",");
+
+            if (line.startsWith("#") || fields.length < 3 || fields[0].startsWith("<")) {
+                continue;
+            }
+
+            String event = fields[2];
+            int modifiers = event.indexOf(':'); // cycles:u when counting the user space only
+            event = (modifiers < 0) ? event : event.substring(0, modifiers);
+
+            try {
+                counters.put(event, Double.parseDouble(fields[0]));
+            } catch (NumberFormatException e) {
+                // not a counter line
+            }
+        }
+
+        return counters;
+    }
+
+    // cutime + cstime, cminflt + cmajflt of the reaped children
+    static long[] children() throws IOException {
+        String stat = Files.readString(Path.of("/proc/self/stat"));
+        String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" "); // fields from the 3rd one, the state
+        long time = Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+        long faults = Long.parseLong(fields[8]) + Long.parseLong(fields[10]);
+        return new long[] {time, faults};
+    }
+
+    // waits for the processes reparented to the runner after the target exited and reaps them
+    static void orphans() throws Throwable {
+        for (List<ProcessHandle> orphans; !(orphans = ProcessHandle.current().children().toList()).isEmpty(); ) {
+            for (ProcessHandle orphan : orphans) {
+                Native.waitpid(orphan.pid()); // -1 if interrupted, the next round waits again
+            }
+        }
+    }
+
+    // kB, the sum of VmRSS of the process and its descendants, e.g. a script, its JVM and the spawned worker
+    static long rss(ProcessHandle process) {
+        return Stream.concat(Stream.of(process), process.descendants()).mapToLong(handle -> rss(handle.pid())).sum();
+    }
+
+    private static long rss(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/" + pid + "/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring("VmRSS:".length(), line.length() - "kB".length()).trim());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // exited in between
+        }
+
+        return 0;
+    }
+
+    static Result result(String target, List<Sample> samples) {
+        double[] walls = samples.stream().mapToDouble(Sample::wall).toArray();
+        double cpu = samples.stream().mapToDouble(Sample::cpu).average().orElse(0);
+        double rss = samples.stream().mapToDouble(Sample::rss).max().orElse(0);
+        double faults = samples.stream().mapToDouble(Sample::faults).average().orElse(0);
+
+        double ipc = ratio(samples, "instructions", "cycles");
+        double branchMisses = ratio(samples, "branch-misses", "branches") * 100;
+        double l1Misses = ratio(samples, "L1-dcache-load-misses", "L1-dcache-loads") * 100;
+        double tlbMisses = ratio(samples, "dTLB-load-misses", "dTLB-loads") * 100;
+
+        return new Result(target, samples.size(), Statistics.mean(walls), Statistics.stddev(walls), cpu, rss, faults,
+                ipc, branchMisses, l1Misses, tlbMisses);
+    }
+
+    // over the sums of all runs, NaN if an event is not counted in some run
+    static double ratio(List<Sample> samples, String dividend, String divisor) {
+        double top = 0;
+        double bottom = 0;
+
+        for (Sample sample : samples) {
+            top += sample.counters.getOrDefault(dividend, Double.NaN);
+            bottom += sample.counters.getOrDefault(divisor, Double.NaN);
+        }
+
+        return (bottom == 0) ? Double.NaN : top / bottom;
+    }
+
+    static String format(double value) {
+        return Double.isNaN(value) ? "-" : String.format("%.2f", value);
+    }
+
+    static Map<String, Result> read(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+
+        for (String line : Files.readAllLines(file)) {
+            if (!line.isBlank() && !line.startsWith("#")) {
+                Result result = Result.parse(line);
+                results.put(result.target, result);
+            }
+        }
+
+        return results;
+    }
+
+    static void write(Path file, List<Result> results) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(Result.HEADER);
+        results.forEach(result -> lines.add(result.format()));
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        Files.write(file, lines);
+    }
+
+    // prctl and waitpid of libc, loaded on the first use, so the tests of the rest need no native access
+    static final class Native {
+
+        private static final int PR_SET_CHILD_SUBREAPER = 36;
+        private static final Linker LINKER = Linker.nativeLinker();
+        private static final MethodHandle PRCTL = LINKER.downcallHandle(LINKER.defaultLookup().find("prctl").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG),
+                Linker.Option.firstVariadicArg(1));
+        private static final MethodHandle WAITPID = LINKER.downcallHandle(LINKER.defaultLookup().find("waitpid").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+
+        private Native() {
+        }
+
+        static void subreaper() throws Throwable {
+            if ((int) PRCTL.invokeExact(PR_SET_CHILD_SUBREAPER, 1L) != 0) {
+                throw new IllegalStateException("Failed to become a child subreaper");
+            }
+        }
+
+        static int waitpid(long pid) throws Throwable {
+            return (int) WAITPID.invokeExact((int) pid, MemorySegment.NULL, 0);
+        }
+    }
+
+    static final class Statistics {
+
+        private Statistics() {
+        }
+
+        static double mean(double[] values) {
+            double sum = 0;
+
+            for (double value : values) {
+                sum += value;
+            }
+
+            return sum / values.length;
+        }
+
+        // sample standard deviation
+        static double stddev(double[] values) {
+            double mean = mean(values);
+            double sum = 0;
+
+            for (double value : values) {
+                sum += (value - mean) * (value - mean);
+            }
+
+            return Math.sqrt(sum / (values.length - 1));
+        }
+
+        // two-sided p-value of Welch's t-test, the runs of the two sides can differ in number and variance
+        static double welch(double mean1, double stddev1, int n1, double mean2, double stddev2, int n2) {
+            double v1 = stddev1 * stddev1 / n1;
+            double v2 = stddev2 * stddev2 / n2;
+
+            if (v1 + v2 == 0) {
+                return (mean1 == mean2) ? 1 : 0;
+            }
+
+            double t = (mean1 - mean2) / Math.sqrt(v1 + v2);
+            double df = (v1 + v2) * (v1 + v2) / (v1 * v1 / (n1 - 1) + v2 * v2 / (n2 - 1));
+            return 2 * (1 - cdf(Math.abs(t), df));
+        }
+
+        // Student's t distribution
+        static double cdf(double t, double df) {
+            double tail = 0.5 * beta(df / (df + t * t), df / 2, 0.5);
+            return (t >= 0) ? 1 - tail : tail;
+        }
+
+        static double quantile(double p, double df) {
+            double low = -1000;
+            double high = 1000;
+
+            for (int i = 0; i < 100; i++) {
+                double mid = (low + high) / 2;
+
+                if (cdf(mid, df) < p) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return (low + high) / 2;
+        }
+
+        // the regularized incomplete beta function with Lentz's continued fraction
+        static double beta(double x, double a, double b) {
+            if (x <= 0 || x >= 1) {
+                return (x <= 0) ? 0 : 1;
+            }
+
+            if (x > (a + 1) / (a + b + 2)) {
+                return 1 - beta(1 - x, b, a);
+            }
+
+            double front = Math.exp(a * Math.log(x) + b * Math.log(1 - x) - logBeta(a, b)) / a;
+            double c = 1;
+            double d = 1 / tiny(1 - (a + b) * x / (a + 1));
+            double f = d;
+
+            for (int m = 1; m <= 300; m++) {
+                double even = m * (b - m) * x / ((a + 2 * m - 1) * (a + 2 * m));
+                d = 1 / tiny(1 + even * d);
+                c = tiny(1 + even / c);
+                f *= c * d;
+
+                double odd = -(a + m) * (a + b + m) * x / ((a + 2 * m) * (a + 2 * m + 1));
+                d = 1 / tiny(1 + odd * d);
+                c = tiny(1 + odd / c);
+                double delta = c * d;
+                f *= delta;
+
+                if (Math.abs(delta - 1) < 1e-12) {
+                    break;
+                }
+            }
+
+            return front * f;
+        }
+
+        private static double tiny(double value) {
+            return (Math.abs(value) < 1e-300) ? 1e-300 : value;
+        }
+
+        static double logBeta(double a, double b) {
+            return logGamma(a) + logGamma(b) - logGamma(a + b);
+        }
+
+        // Lanczos approximation, g = 7
+        static double logGamma(double x) {
+            if (x < 0.5) {
+                return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x);
+            }
+
+            double[] coefficients = {
+                    0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                    -176.61502916214059, 12.507343278686905, -0.13857109526572012,
+                    9.9843695780195716e-6, 1.5056327351493116e-7
+            };
+
+            x -= 1;
+            double sum = coefficients[0];
+            for (int i = 1; i < coefficients.length; i++) {
+                sum += coefficients[i] / (x + i);
+            }
+
+            double t = x + 7.5;
+            return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+        }
+    }
+}
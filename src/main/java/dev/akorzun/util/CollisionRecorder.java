@@ -3,12 +3,15 @@ package dev.akorzun.util;
 import sun.misc.Unsafe;
 
 import java.lang.reflect.Field;
-import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.StringJoiner;
 
+/**
+ * Probe lengths of the lookups in one hash table: an off-heap histogram and no allocations on record(),
+ * so engines keep it compiled in behind a static final flag. Not thread-safe, one per table and so one per thread.
+ */
 public class CollisionRecorder {
 
+    private static final int BUCKETS = 64; // the last one counts the longer probes
     private static final Unsafe UNSAFE;
 
     static {
@@ -21,16 +24,39 @@ public class CollisionRecorder {
         }
     }
 
-    private final Set<String> collisions = new HashSet<>();
+    private final long histogram;
+    private long count;
+    private long sum;
+    private long max;
 
-    public void record(long index, long position, long length) {
-        byte[] array = new byte[(int) length];
-        UNSAFE.copyMemory(null, position, array, Unsafe.ARRAY_BYTE_BASE_OFFSET, length);
-        String key = new String(array, StandardCharsets.UTF_8);
-        collisions.add(key);
+    public CollisionRecorder() {
+        histogram = UNSAFE.allocateMemory(BUCKETS * 8);
+        UNSAFE.setMemory(histogram, BUCKETS * 8, (byte) 0);
     }
 
-    public void print() {
-        System.err.println("Thread: " + Thread.currentThread() + ". Collisions: " + collisions.size());
+    // probes: 1 for the home slot, 2 for the next one and so on
+    public void record(long probes) {
+        long address = histogram + Math.min(probes, BUCKETS - 1) * 8;
+        UNSAFE.putLong(address, UNSAFE.getLong(address) + 1);
+
+        count++;
+        sum += probes;
+        max = Math.max(max, probes);
+    }
+
+    public void print(long size, long capacity) {
+        StringJoiner buckets = new StringJoiner(", ", "{", "}");
+
+        for (int i = 1; i < BUCKETS; i++) {
+            long value = UNSAFE.getLong(histogram + i * 8L);
+
+            if (value != 0) {
+                buckets.add(((i == BUCKETS - 1) ? i + "+" : i) + "=" + value);
+            }
+        }
+
+        System.err.printf("Thread: %s. Lookups: %d, avg probes: %.3f, max probes: %d, load factor: %.3f, probes: %s%n",
+                Thread.currentThread().getName(), count, (count == 0) ? 0.0 : (double) sum / count, max,
+                (double) size / capacity, buckets);
     }
 }
@@ -10,15 +10,24 @@ import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Random;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
 import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
 class ChallengeTest {
 
@@ -68,6 +77,727 @@ class ChallengeTest {
         }
     }
 
+    @Test
+    void testPercentiles(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        String[] stations = generate();
+        TreeMap<String, List<Integer>> measurements = new TreeMap<>();
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 500000; i++) {
+                String station = stations[random.nextInt(0, 100)];
+                int temperature = random.nextInt(-999, 1000);
+                writer.write(station);
+                writer.write(';');
+                writer.write(Double.toString(temperature / 10.0));
+                writer.write('\n');
+                measurements.computeIfAbsent(station, key -> new ArrayList<>()).add(temperature);
+            }
+        }
+
+        StringJoiner expected = new StringJoiner(", ", "{", "}\n");
+        measurements.forEach((station, temperatures) -> {
+            Collections.sort(temperatures);
+            int cnt = temperatures.size();
+            long sum = temperatures.stream().mapToLong(Integer::longValue).sum();
+            StringBuilder builder = new StringBuilder(station).append('=')
+                    .append(temperatures.get(0) / 10.0).append('/')
+                    .append(Challenge.round(sum / 10.0 / cnt)).append('/')
+                    .append(temperatures.get(cnt - 1) / 10.0);
+
+            for (int percentile : new int[]{50, 95, 99}) {
+                int rank = (int) Math.ceil(percentile * cnt / 100.0);
+                builder.append('/').append(temperatures.get(rank - 1) / 10.0);
+            }
+
+            expected.add(builder);
+        });
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_27_Histogram().solve(new String[]{"--percentiles"}, input, new PrintStream(stream));
+
+        String actual = stream.toString(StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected.toString(), actual);
+    }
+
+    @Test
+    void testQuantiles(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        TreeMap<String, List<Integer>> measurements = new TreeMap<>();
+
+        Path input = temp.resolve("input.txt");
+        Path left = temp.resolve("left.txt");
+        Path right = temp.resolve("right.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8);
+             BufferedWriter leftWriter = Files.newBufferedWriter(left, StandardCharsets.UTF_8);
+             BufferedWriter rightWriter = Files.newBufferedWriter(right, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 500000; i++) {
+                String station = "Station" + random.nextInt(0, 100);
+                int temperature = random.nextInt(-999, 1000);
+                String line = station + ";" + (temperature / 10.0) + "\n";
+                writer.write(line);
+                (i % 2 == 0 ? leftWriter : rightWriter).write(line);
+                measurements.computeIfAbsent(station, key -> new ArrayList<>()).add(temperature);
+            }
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_28_QuantileSketch().solve(new String[]{"--quantiles"}, input, new PrintStream(stream));
+        String actual = stream.toString(StandardCharsets.UTF_8);
+
+        for (String entry : actual.substring(1, actual.length() - 2).split(", ")) {
+            String station = entry.substring(0, entry.indexOf('='));
+            String[] values = entry.substring(entry.indexOf('=') + 1).split("/");
+            List<Integer> temperatures = measurements.get(station);
+            Collections.sort(temperatures);
+
+            int[] percentiles = {50, 95, 99};
+            for (int i = 0; i < percentiles.length; i++) {
+                int rank = (int) Math.ceil(percentiles[i] * temperatures.size() / 100.0);
+                double expected = temperatures.get(rank - 1) / 10.0;
+                double value = Double.parseDouble(values[3 + i]);
+                Assertions.assertEquals(expected, value, Math.abs(expected) / 32 + 1e-9, station + " p" + percentiles[i]);
+            }
+        }
+
+        Path dump = temp.resolve("right.bin");
+        new Challenge_28_QuantileSketch().solve(new String[]{"--quantiles-output", dump.toString()}, right, new PrintStream(new ByteArrayOutputStream()));
+
+        stream = new ByteArrayOutputStream();
+        new Challenge_28_QuantileSketch().solve(new String[]{"--quantiles-input", dump.toString()}, left, new PrintStream(stream));
+        Assertions.assertEquals(actual, stream.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSketches() {
+        Random random = new Random();
+        Challenge_28_QuantileSketch.Sketches sketches = new Challenge_28_QuantileSketch.Sketches();
+        List<Long> wide = new ArrayList<>();
+        List<Long> small = new ArrayList<>();
+        List<Long> large = new ArrayList<>();
+
+        // log-uniform over 1..2^40, ~600 bins: the window moves up and down but never collapses
+        for (int i = 0; i < 100000; i++) {
+            long value = 1 + (long) Math.pow(2, random.nextDouble(40));
+            sketches.add(0, value);
+            wide.add(value);
+
+            value = random.nextLong(1, 1 << 10);
+            sketches.add(128, value);
+            small.add(value);
+
+            value = random.nextLong(1L << 30, 1L << 40);
+            sketches.add(256, value);
+            large.add(value);
+        }
+
+        assertQuantiles(wide, sketches.quantiles(0, wide.size()));
+
+        sketches.merge(128, sketches, 256);
+        small.addAll(large);
+        assertQuantiles(small, sketches.quantiles(128, small.size()));
+
+        // -2^32..2^40 is ~1060 bins: the positives grow the range inside the window, the negatives then move it down,
+        // so the lowest collapse into bin 0 and the quantiles above them stay within the error
+        List<Long> collapsed = new ArrayList<>(List.of(1L << 20));
+        for (int i = 0; i < 100000; i++) {
+            collapsed.add((i < 90000) ? 1 + (long) Math.pow(2, random.nextDouble(40)) : -1 - (long) Math.pow(2, random.nextDouble(32)));
+        }
+
+        for (long value : collapsed) {
+            sketches.add(384, value);
+        }
+
+        assertQuantiles(collapsed, sketches.quantiles(384, collapsed.size()));
+    }
+
+    static void assertQuantiles(List<Long> values, long[] quantiles) {
+        Collections.sort(values);
+
+        int[] percentiles = {50, 95, 99};
+        for (int i = 0; i < percentiles.length; i++) {
+            long expected = values.get((int) Math.ceil(percentiles[i] * values.size() / 100.0) - 1);
+            Assertions.assertEquals(expected, quantiles[i], Math.abs(expected) / 32.0, "p" + percentiles[i]);
+        }
+    }
+
+    @Test
+    void testTopK(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        String[] stations = generate();
+        TreeMap<String, Integer> counts = new TreeMap<>();
+        int rows = 500000;
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < rows; i++) {
+                // stations 0..9 take 5%..9.5% of rows each, the rest is spread over 10k stations
+                int permille = random.nextInt(0, 1000);
+                int index = (permille < 725) ? (int) (Math.sqrt(90.25 + 0.4 * permille) - 9.5) : random.nextInt(10, stations.length);
+                String station = stations[index];
+                writer.write(station);
+                writer.write(';');
+                writer.write(Double.toString(random.nextInt(-999, 1000) / 10.0));
+                writer.write('\n');
+                counts.merge(station, 1, Integer::sum);
+            }
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_29_TopK().solve(new String[]{"--top-k", "10"}, input, new PrintStream(stream));
+        String actual = stream.toString(StandardCharsets.UTF_8);
+
+        List<String> expected = counts.keySet().stream()
+                .sorted((left, right) -> Integer.compare(counts.get(right), counts.get(left)))
+                .limit(10)
+                .toList();
+
+        int position = 1;
+        for (String station : expected) {
+            Assertions.assertTrue(actual.startsWith(station + "=", position), "Station: " + station + ", actual: " + actual);
+            int end = actual.indexOf(", ", position);
+            String entry = actual.substring(position, (end < 0) ? actual.length() - 2 : end);
+            long count = Long.parseLong(entry.substring(entry.lastIndexOf('/') + 1));
+
+            Assertions.assertTrue(count >= counts.get(station), "Station: " + station + ", count: " + count);
+            Assertions.assertTrue(count <= counts.get(station) + rows / 40, "Station: " + station + ", count: " + count);
+            position = end + 2;
+        }
+    }
+
+    @Test
+    void testCountDistinct(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        Set<String> distinct = new HashSet<>();
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 500000; i++) {
+                // the hash folds key words with xor, so names are random letters rather than generate()
+                char[] name = new char[random.nextInt(1, 33)];
+                for (int j = 0; j < name.length; j++) {
+                    name[j] = (char) random.nextInt('a', 'e');
+                }
+
+                String station = new String(name);
+                writer.write(station);
+                writer.write(';');
+                writer.write(Double.toString(random.nextInt(-999, 1000) / 10.0));
+                writer.write('\n');
+                distinct.add(station);
+            }
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_30_HyperLogLog().solve(new String[]{"--count-distinct"}, input, new PrintStream(stream));
+
+        long actual = Long.parseLong(stream.toString(StandardCharsets.UTF_8).trim());
+        Assertions.assertEquals(distinct.size(), actual, distinct.size() * 0.03);
+    }
+
+    @Test
+    void testAutoCapacity(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        String[] stations = generate();
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 500000; i++) {
+                // the sampled first segment sees a few stations, so the tables start small, grow and merge
+                String station = (i < 150000) ? stations[random.nextInt(0, 16)] : stations[random.nextInt(0, stations.length)];
+                double temperature = random.nextInt(-999, 1000) / 10.0;
+                writer.write(station);
+                writer.write(';');
+                writer.write(Double.toString(temperature));
+                writer.write('\n');
+            }
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_01_Substring().solve(new String[0], input, new PrintStream(stream));
+        String expected = stream.toString(StandardCharsets.UTF_8);
+
+        stream = new ByteArrayOutputStream();
+        new Challenge_30_HyperLogLog().solve(new String[]{"--auto-capacity", "1"}, input, new PrintStream(stream));
+
+        String actual = stream.toString(StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    void testFilter(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        TreeMap<String, List<Integer>> measurements = new TreeMap<>();
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 500000; i++) {
+                String station = "Station" + "ab".repeat(random.nextInt(0, 20)) + random.nextInt(0, 1000);
+                int temperature = random.nextInt(-999, 1000);
+                writer.write(station);
+                writer.write(';');
+                writer.write(Double.toString(temperature / 10.0));
+                writer.write('\n');
+                measurements.computeIfAbsent(station, key -> new ArrayList<>()).add(temperature);
+            }
+        }
+
+        List<String> stations = measurements.keySet().stream().filter(station -> station.hashCode() % 7 == 0).toList();
+        List<String> args = new ArrayList<>(List.of("--prefix", "Stationabab"));
+        stations.forEach(station -> args.addAll(List.of("--station", station)));
+
+        StringJoiner expected = new StringJoiner(", ", "{", "}\n");
+        measurements.forEach((station, temperatures) -> {
+            if (stations.contains(station) && station.startsWith("Stationabab")) {
+                long sum = temperatures.stream().mapToLong(Integer::longValue).sum();
+                expected.add(station + "=" + Collections.min(temperatures) / 10.0 + "/"
+                        + Challenge.round(sum / 10.0 / temperatures.size()) + "/" + Collections.max(temperatures) / 10.0);
+            }
+        });
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_31_Filter().solve(args.toArray(String[]::new), input, new PrintStream(stream));
+
+        String actual = stream.toString(StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected.toString(), actual);
+    }
+
+    @Test
+    void testWindows(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        long window = 3600;
+        long hop = 900;
+        TreeMap<String, TreeMap<Long, List<Integer>>> measurements = new TreeMap<>();
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 500000; i++) {
+                String station = "Station" + "ab".repeat(random.nextInt(0, 20)) + random.nextInt(0, 100);
+                long time = random.nextLong(0, (long) Math.pow(10, random.nextInt(1, 13))); // 1 to 12 digits
+                int temperature = random.nextInt(-999, 1000);
+                writer.write(station);
+                writer.write(';');
+                writer.write(Long.toString(time));
+                writer.write(';');
+                writer.write(Double.toString(temperature / 10.0));
+                writer.write('\n');
+
+                for (long start = time - time % hop; start > time - window; start -= hop) {
+                    measurements.computeIfAbsent(station, key -> new TreeMap<>())
+                            .computeIfAbsent(start, key -> new ArrayList<>()).add(temperature);
+                }
+            }
+        }
+
+        StringJoiner expected = new StringJoiner(", ", "{", "}\n");
+        measurements.forEach((station, windows) -> windows.forEach((start, temperatures) -> {
+            long sum = temperatures.stream().mapToLong(Integer::longValue).sum();
+            expected.add(station + "@" + start + "=" + Collections.min(temperatures) / 10.0 + "/"
+                    + Challenge.round(sum / 10.0 / temperatures.size()) + "/" + Collections.max(temperatures) / 10.0);
+        }));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        String[] args = {"--window", Long.toString(window), "--hop", Long.toString(hop)};
+        new Challenge_32_Windows().solve(args, input, new PrintStream(stream));
+
+        String actual = stream.toString(StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected.toString(), actual);
+    }
+
+    @Test
+    void testSchema(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        TreeMap<String, List<long[]>> measurements = new TreeMap<>();
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 500000; i++) {
+                long count = random.nextLong(-999999999999L, 1000000000000L) / (long) Math.pow(10, random.nextInt(0, 12));
+                String station = "Station" + "ab".repeat(random.nextInt(0, 20)) + random.nextInt(0, 1000);
+                int temperature = random.nextInt(-999, 1000);
+                String note = "x".repeat(random.nextInt(0, 30));
+                long size = random.nextLong(0, 1000000000000000L) / (long) Math.pow(10, random.nextInt(0, 15));
+
+                writer.write(count + ";" + station + ";" + temperature / 10.0 + ";" + note + ";" + size + "\n");
+                measurements.computeIfAbsent(station, key -> new ArrayList<>()).add(new long[]{count, temperature, size});
+            }
+        }
+
+        StringJoiner expected = new StringJoiner(", ", "{", "}\n");
+        measurements.forEach((station, rows) -> {
+            StringJoiner metrics = new StringJoiner("|");
+
+            for (int i = 0; i < 3; i++) {
+                int column = i;
+                long min = rows.stream().mapToLong(row -> row[column]).min().orElseThrow();
+                long max = rows.stream().mapToLong(row -> row[column]).max().orElseThrow();
+                long sum = rows.stream().mapToLong(row -> row[column]).sum();
+
+                if (column == 1) {
+                    metrics.add(min / 10.0 + "/" + Challenge.round(sum / 10.0 / rows.size()) + "/" + max / 10.0);
+                } else {
+                    metrics.add(min + "/" + Challenge.round((double) sum / rows.size()) + "/" + max);
+                }
+            }
+
+            expected.add(station + "=" + metrics);
+        });
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        String[] args = {"--schema", "int,key,decimal,skip,int"};
+        new Challenge_33_Schema().solve(args, input, new PrintStream(stream));
+
+        String actual = stream.toString(StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected.toString(), actual);
+    }
+
+    @Test
+    void testDecimal(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        TreeMap<String, List<Long>> measurements = new TreeMap<>();
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 500000; i++) {
+                String station = "Station" + "ab".repeat(random.nextInt(0, 20)) + random.nextInt(0, 1000);
+                int scale = random.nextInt(0, 3);
+                long value = random.nextLong(-99999999, 100000000) / (long) Math.pow(10, random.nextInt(1, 8));
+                BigDecimal decimal = BigDecimal.valueOf(value, scale); // 7, -123.45, 123456.7, min/max are ints
+                writer.write(station);
+                writer.write(';');
+                writer.write(decimal.toPlainString());
+                writer.write('\n');
+                measurements.computeIfAbsent(station, key -> new ArrayList<>()).add(decimal.movePointRight(2).longValueExact());
+            }
+        }
+
+        StringJoiner expected = new StringJoiner(", ", "{", "}\n");
+        measurements.forEach((station, values) -> {
+            long sum = values.stream().mapToLong(Long::longValue).sum();
+            long avg = Math.round(sum / 100.0 / values.size() * 100.0);
+            expected.add(station + "=" + BigDecimal.valueOf(Collections.min(values), 2).toPlainString() + "/"
+                    + BigDecimal.valueOf(avg, 2).toPlainString() + "/" + BigDecimal.valueOf(Collections.max(values), 2).toPlainString());
+        });
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_34_Decimal().solve(new String[]{"--scale", "2"}, input, new PrintStream(stream));
+
+        String actual = stream.toString(StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected.toString(), actual);
+
+        // more fraction digits than the scale, on the short and the wide path, and a value out of the int range
+        String[][] rejects = {{"1.234", "2"}, {"1.2345678901", "3"}, {"12345678.9", "3"}, {"-12345678.9", "3"}};
+        for (String[] reject : rejects) {
+            Path bad = temp.resolve("bad.txt");
+            Files.writeString(bad, "a;1.0\nb;" + reject[0] + "\n");
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new Challenge_34_Decimal()
+                    .solve(new String[]{"--scale", reject[1]}, bad, new PrintStream(new ByteArrayOutputStream())), reject[0]);
+        }
+    }
+
+    @Test
+    void testTolerant(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        TreeMap<String, List<Integer>> measurements = new TreeMap<>();
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            writer.write('\uFEFF');
+
+            for (int i = 0; i < 500000; i++) {
+                String station = "Station \"" + "ab".repeat(random.nextInt(0, 20)) + "\" " + random.nextInt(0, 1000);
+                int temperature = random.nextInt(-999, 1000);
+                boolean quote = (i == 0) || random.nextBoolean();
+
+                writer.write(quote ? "\"" + station.replace("\"", "\"\"") + "\"" : station);
+                writer.write(';');
+                writer.write(quote ? "\"" + temperature / 10.0 + "\"" : Double.toString(temperature / 10.0));
+                writer.write("\r\n");
+                measurements.computeIfAbsent(station, key -> new ArrayList<>()).add(temperature);
+            }
+        }
+
+        StringJoiner expected = new StringJoiner(", ", "{", "}\n");
+        measurements.forEach((station, temperatures) -> {
+            long sum = temperatures.stream().mapToLong(Integer::longValue).sum();
+            expected.add(station + "=" + Collections.min(temperatures) / 10.0 + "/"
+                    + Challenge.round(sum / 10.0 / temperatures.size()) + "/" + Collections.max(temperatures) / 10.0);
+        });
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_35_Tolerant().solve(new String[0], input, new PrintStream(stream));
+
+        String actual = stream.toString(StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected.toString(), actual);
+
+        // quoted stations with bare values, e.g. "Hamburg";12.0, and quoted values, all of them past the first 64 KB
+        Path late = temp.resolve("late.txt");
+        measurements.clear();
+        try (BufferedWriter writer = Files.newBufferedWriter(late, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 200000; i++) {
+                String station = "Station" + random.nextInt(0, 100);
+                int temperature = random.nextInt(-999, 1000);
+                boolean quotes = i >= 100000;
+
+                writer.write(quotes && random.nextBoolean() ? "\"" + station + "\"" : station);
+                writer.write(';');
+                writer.write(quotes && random.nextBoolean() ? "\"" + temperature / 10.0 + "\"" : Double.toString(temperature / 10.0));
+                writer.write('\n');
+                measurements.computeIfAbsent(station, key -> new ArrayList<>()).add(temperature);
+            }
+        }
+
+        StringJoiner lateExpected = new StringJoiner(", ", "{", "}\n");
+        measurements.forEach((station, temperatures) -> {
+            long sum = temperatures.stream().mapToLong(Integer::longValue).sum();
+            lateExpected.add(station + "=" + Collections.min(temperatures) / 10.0 + "/"
+                    + Challenge.round(sum / 10.0 / temperatures.size()) + "/" + Collections.max(temperatures) / 10.0);
+        });
+
+        stream = new ByteArrayOutputStream();
+        new Challenge_35_Tolerant().solve(new String[0], late, new PrintStream(stream));
+        Assertions.assertEquals(lateExpected.toString(), stream.toString(StandardCharsets.UTF_8));
+
+        // a plain file with quotes inside the stations, a"b and a""b are different stations there
+        Path plain = temp.resolve("plain.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(plain, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 100000; i++) {
+                String station = random.nextBoolean() ? "a\"b" : "a\"\"b";
+                writer.write(station);
+                writer.write(';');
+                writer.write(Double.toString(random.nextInt(-999, 1000) / 10.0));
+                writer.write('\n');
+            }
+        }
+
+        stream = new ByteArrayOutputStream();
+        new Challenge_01_Substring().solve(new String[0], plain, new PrintStream(stream));
+        String plainExpected = stream.toString(StandardCharsets.UTF_8);
+
+        stream = new ByteArrayOutputStream();
+        new Challenge_35_Tolerant().solve(new String[0], plain, new PrintStream(stream));
+        Assertions.assertEquals(plainExpected, stream.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testValidating(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        TreeMap<String, List<Integer>> measurements = new TreeMap<>();
+        List<String> bad = new ArrayList<>();
+
+        String[] malformed = {
+                "S".repeat(101) + ";1.0", "NoSemicolon 1.0", ";1.0", "Line;", "Dot;12", "Digits;1.23", "Range;123.4",
+                "Sign;+1.0", "Minus;-.5", "Letters;a.b", "Semi;1;0", "Bad\u00C3(;1.0", "Surrogate\u00ED\u00A0\u0080;1.0",
+                "Overlong\u00C0\u00AF;1.0", "Cut\u00E2\u0082;1.0", "Overlong3\u00E0\u0080\u00AF;1.0",
+                "Large\u00F4\u0090\u0080\u0080;1.0", "Lead\u00F5\u0080\u0080\u0080;1.0", "Cont\u0080;1.0",
+                "L".repeat(31) + "\u00C3(;1.0", "L".repeat(31) + "\u00C3;1.0", "L".repeat(62) + "\u00F0\u009F\u0098;1.0"
+        };
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            if (random.nextInt(100) == 0) {
+                String row = malformed[random.nextInt(malformed.length)];
+                text.append(row).append('\n');
+                bad.add(row);
+                continue;
+            }
+
+            String station = (random.nextInt(10) == 0 ? "L".repeat(31) : "Station") + random.nextInt(0, 1000)
+                    + "\u00C3\u00A9\u00E2\u0082\u00AC\u00F0\u009F\u0098\u0080"; // é€😀 in UTF-8 bytes
+            int temperature = random.nextInt(-999, 1000);
+            text.append(station).append(';').append(temperature / 10.0).append('\n');
+            measurements.computeIfAbsent(new String(station.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8), key -> new ArrayList<>()).add(temperature);
+        }
+
+        String large = "S".repeat(100000) + ";1.0"; // over the quarantine buffer, written on its own
+        text.append(large).append('\n');
+        bad.add(large);
+
+        text.append("Last;1"); // no line ending
+        bad.add("Last;1");
+
+        Path input = temp.resolve("input.txt");
+        Path quarantine = temp.resolve("bad.txt");
+        Files.write(input, text.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+        StringJoiner expected = new StringJoiner(", ", "{", "}\n");
+        measurements.forEach((station, temperatures) -> {
+            long sum = temperatures.stream().mapToLong(Integer::longValue).sum();
+            expected.add(station + "=" + Collections.min(temperatures) / 10.0 + "/"
+                    + Challenge.round(sum / 10.0 / temperatures.size()) + "/" + Collections.max(temperatures) / 10.0);
+        });
+
+        Collections.sort(bad);
+
+        for (Challenge implementation : List.of(new Challenge_36_Validating(), new Challenge_37_Utf8())) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            String[] args = {"--quarantine", quarantine.toString()};
+            implementation.solve(args, input, new PrintStream(stream));
+
+            String actual = stream.toString(StandardCharsets.UTF_8);
+            Assertions.assertEquals(expected.toString(), actual);
+
+            List<String> rejected = new ArrayList<>(List.of(Files.readString(quarantine, StandardCharsets.ISO_8859_1).split("\n")));
+            Collections.sort(rejected);
+            Assertions.assertEquals(bad, rejected, "Implementation: " + implementation.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    void testWidths(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        String[] stations = generate();
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 500000; i++) {
+                String station = stations[random.nextInt(0, stations.length)];
+                double temperature = random.nextInt(-999, 1000) / 10.0;
+                writer.write(station);
+                writer.write(';');
+                writer.write(Double.toString(temperature));
+                writer.write('\n');
+            }
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_01_Substring().solve(new String[0], input, new PrintStream(stream));
+        String expected = stream.toString(StandardCharsets.UTF_8);
+
+        for (int width = Loops.MIN_WIDTH; width <= Loops.MAX_WIDTH; width++) {
+            stream = new ByteArrayOutputStream();
+            String[] args = {"--width", Integer.toString(width)};
+            new Challenge_40_Calibration().solve(args, input, new PrintStream(stream));
+
+            String actual = stream.toString(StandardCharsets.UTF_8);
+            Assertions.assertEquals(expected, actual, "Width: " + width);
+        }
+
+        stream = new ByteArrayOutputStream();
+        new Challenge_40_Calibration().solve(new String[0], input, new PrintStream(stream));
+        Assertions.assertEquals(expected, stream.toString(StandardCharsets.UTF_8), "Calibrated");
+
+        // times by width, 4 is the default: it stays unless another one is 5% faster
+        long[] times = {0, 0, 100, 100, 100, 96, 100, 100, 100};
+        Assertions.assertEquals(4, Challenge_40_Calibration.best(times));
+        times[5] = 94;
+        Assertions.assertEquals(5, Challenge_40_Calibration.best(times));
+        times[8] = 90;
+        Assertions.assertEquals(8, Challenge_40_Calibration.best(times));
+        times[4] = 80;
+        Assertions.assertEquals(4, Challenge_40_Calibration.best(times));
+    }
+
+    @Test
+    void testDictionary(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        String[] stations = generate();
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 500000; i++) {
+                String station = stations[random.nextInt(0, stations.length)];
+                double temperature = random.nextInt(-999, 1000) / 10.0;
+                writer.write(station);
+                writer.write(';');
+                writer.write(Double.toString(temperature));
+                writer.write('\n');
+            }
+        }
+
+        // half of the stations and some that never show up, the rest goes to the regular table
+        Path dictionary = temp.resolve("dictionary.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(dictionary, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < stations.length; i += 2) {
+                writer.write(stations[i]);
+                writer.write('\n');
+                writer.write("Absent " + i);
+                writer.write('\n');
+            }
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_01_Substring().solve(new String[0], input, new PrintStream(stream));
+        String expected = stream.toString(StandardCharsets.UTF_8);
+
+        stream = new ByteArrayOutputStream();
+        String[] args = {"--dictionary", dictionary.toString()};
+        new Challenge_43_PerfectHash().solve(args, input, new PrintStream(stream));
+
+        String actual = stream.toString(StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    void testShortKeys(@TempDir Path temp) throws Exception {
+        Random random = new Random();
+        List<String> stations = new ArrayList<>();
+
+        // around the 16 byte border of the short table, the long ones share the first 16 bytes
+        for (int length = 1; length <= 32; length++) {
+            for (int i = 0; i < 20; i++) {
+                StringBuilder station = new StringBuilder((length > 16) ? "Sixteen byte key" : "");
+
+                while (station.length() < length) {
+                    station.append((char) random.nextInt('a', 'z' + 1));
+                }
+
+                stations.add(station.toString());
+            }
+        }
+
+        Path input = temp.resolve("input.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 200000; i++) {
+                String station = stations.get(random.nextInt(0, stations.size()));
+                double temperature = random.nextInt(-999, 1000) / 10.0;
+                writer.write(station);
+                writer.write(';');
+                writer.write(Double.toString(temperature));
+                writer.write('\n');
+            }
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new Challenge_01_Substring().solve(new String[0], input, new PrintStream(stream));
+        String expected = stream.toString(StandardCharsets.UTF_8);
+
+        stream = new ByteArrayOutputStream();
+        new Challenge_46_ShortKeys().solve(new String[0], input, new PrintStream(stream));
+
+        String actual = stream.toString(StandardCharsets.UTF_8);
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    void testHashes() {
+        Random random = new Random();
+        Challenge_42_Hash.Hash crc = Challenge_42_Hash.Hash.of("crc");
+
+        for (int i = 0; i < 1000; i++) {
+            long word1 = random.nextLong();
+            long word2 = random.nextLong();
+
+            byte[] bytes = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(word1).putLong(word2).array();
+            CRC32C expected = new CRC32C();
+            expected.update(bytes);
+
+            long actual = crc.mix(crc.mix(0xFFFFFFFFL, word1), word2) ^ 0xFFFFFFFFL;
+            Assertions.assertEquals(expected.getValue(), actual & 0xFFFFFFFFL);
+        }
+
+        for (String name : List.of("mix", "wy", "crc")) {
+            Challenge_42_Hash.Hash hash = Challenge_42_Hash.Hash.of(name);
+            long word1 = random.nextLong();
+            long word2 = random.nextLong();
+
+            long straight = hash.finish(hash.mix(hash.mix(0, word1), word2));
+            long swapped = hash.finish(hash.mix(hash.mix(0, word2), word1));
+            Assertions.assertEquals(name.equals("mix"), straight == swapped, "Hash: " + name);
+        }
+    }
+
     static String[] generate() {
         Random random = new Random();
         String[] stations = new String[10000];
@@ -0,0 +1,81 @@
+package dev.akorzun.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+class BenchmarkRunnerTest {
+
+    @Test
+    void testQuantile() {
+        // two-sided critical values of Student's t from the tables
+        Assertions.assertEquals(12.706, BenchmarkRunner.Statistics.quantile(0.975, 1), 1e-3);
+        Assertions.assertEquals(4.303, BenchmarkRunner.Statistics.quantile(0.975, 2), 1e-3);
+        Assertions.assertEquals(2.262, BenchmarkRunner.Statistics.quantile(0.975, 9), 1e-3);
+        Assertions.assertEquals(2.042, BenchmarkRunner.Statistics.quantile(0.975, 30), 1e-3);
+        Assertions.assertEquals(1.980, BenchmarkRunner.Statistics.quantile(0.975, 120), 1e-3);
+        Assertions.assertEquals(3.169, BenchmarkRunner.Statistics.quantile(0.995, 10), 1e-3);
+        Assertions.assertEquals(-1.812, BenchmarkRunner.Statistics.quantile(0.05, 10), 1e-3);
+    }
+
+    @Test
+    void testWelch() {
+        // 10 runs with a stddev of 1 on both sides: 18 degrees of freedom, t = difference / sqrt(0.2)
+        Assertions.assertEquals(0.05, BenchmarkRunner.Statistics.welch(2.101 * Math.sqrt(0.2), 1, 10, 0, 1, 10), 1e-4);
+        Assertions.assertEquals(0.01, BenchmarkRunner.Statistics.welch(0, 1, 10, 2.878 * Math.sqrt(0.2), 1, 10), 1e-4);
+
+        // 5 runs with a variance of 5 on both sides: 8 degrees of freedom, t = difference / sqrt(2)
+        Assertions.assertEquals(0.05, BenchmarkRunner.Statistics.welch(2.306 * Math.sqrt(2), Math.sqrt(5), 5, 0, Math.sqrt(5), 5), 1e-4);
+
+        // unequal variances: 1 + 0.1, the degrees of freedom are 1.21 / (1 / 4 + 0.01 / 9) = 4.8, t = 2.571 is 0.05 at 5
+        double p = BenchmarkRunner.Statistics.welch(2.571 * Math.sqrt(1.1), Math.sqrt(5), 5, 0, 1, 10);
+        Assertions.assertTrue(p > 0.05 && p < 0.055, "p: " + p);
+
+        Assertions.assertEquals(1, BenchmarkRunner.Statistics.welch(100, 3, 10, 100, 4, 12), 1e-9);
+        Assertions.assertEquals(1, BenchmarkRunner.Statistics.welch(100, 0, 10, 100, 0, 10), 1e-9);
+        Assertions.assertEquals(0, BenchmarkRunner.Statistics.welch(100, 0, 10, 101, 0, 10), 1e-9);
+    }
+
+    @Test
+    void testCounters(@TempDir Path temp) throws Exception {
+        Path file = temp.resolve("perf.csv");
+        Files.write(file, List.of(
+                "# started on Mon Oct 19 10:00:00 2026",
+                "",
+                "1234567890,,cycles:u,1000000,100.00,,",
+                "2469135780,,instructions:u,1000000,100.00,2.00,insn per cycle",
+                "<not counted>,,L1-dcache-loads,0,0.00,,",
+                "<not supported>,,dTLB-loads,0,100.00,,",
+                "12.5,msec,task-clock,12500000,100.00,0.999,CPUs utilized",
+                "4321,,page-faults,1000000,100.00,,"));
+
+        Map<String, Double> counters = BenchmarkRunner.counters(file);
+        Assertions.assertEquals(Map.of("cycles", 1234567890.0, "instructions", 2469135780.0, "task-clock", 12.5,
+                "page-faults", 4321.0), counters);
+        Assertions.assertEquals(List.of("cycles", "instructions", "task-clock", "page-faults"), List.copyOf(counters.keySet()));
+    }
+
+    @Test
+    void testResult() {
+        // the files written before the counters have 7 fields
+        BenchmarkRunner.Result old = BenchmarkRunner.Result.parse("./run-25.sh\t10\t812.5\t3.25\t5890.0\t410.2\t10234.0");
+        Assertions.assertEquals("./run-25.sh", old.target());
+        Assertions.assertEquals(10, old.runs());
+        Assertions.assertEquals(812.5, old.wall(), 0);
+        Assertions.assertEquals(3.25, old.error(), 0);
+        Assertions.assertEquals(5890.0, old.cpu(), 0);
+        Assertions.assertEquals(410.2, old.rss(), 0);
+        Assertions.assertEquals(10234.0, old.faults(), 0);
+        Assertions.assertTrue(Double.isNaN(old.ipc()) && Double.isNaN(old.branchMisses())
+                && Double.isNaN(old.l1Misses()) && Double.isNaN(old.tlbMisses()));
+
+        BenchmarkRunner.Result result = new BenchmarkRunner.Result("Challenge_25_Bonus", 5, 790.25, 2.5, 5800.0, 400.0,
+                10000.0, 2.125, 0.5, 1.75, Double.NaN);
+        Assertions.assertEquals(result, BenchmarkRunner.Result.parse(result.format()));
+    }
+}